@@ -0,0 +1,101 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * CacheClient 互斥锁查询和逻辑过期查询的吞吐量和延迟分布，数据库查询用构造好的对象代替
+ * hit：缓存命中；nullHit：命中缓存的空值
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheClientBenchmark {
+
+    private static final String KEY_PREFIX = "bench:cache:shop:";
+
+    private static final Long HIT_ID = 1L;
+
+    private static final Long NULL_ID = 0L;
+
+    private static final Function<Long, Shop> DB_FALLBACK = id -> {
+        if (NULL_ID.equals(id)) {
+            return null;
+        }
+        Shop shop = new Shop();
+        shop.setId(id);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        return shop;
+    };
+
+    private RedisState redis;
+
+    private CacheClient cacheClient;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisState redis) {
+        this.redis = redis;
+        cacheClient = new CacheClient(
+                redis.stringRedisTemplate,
+                KEY_PREFIX,
+                30L, TimeUnit.MINUTES,
+                10L, TimeUnit.SECONDS,
+                30L, TimeUnit.MINUTES,
+                2L, TimeUnit.MINUTES
+        );
+        //预先写入缓存，测量命中路径
+        cacheClient.queryWithMutex(HIT_ID, Shop.class, DB_FALLBACK);
+        cacheClient.queryWithMutex(NULL_ID, Shop.class, DB_FALLBACK);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redis.stringRedisTemplate.delete(KEY_PREFIX + HIT_ID);
+        redis.stringRedisTemplate.delete(KEY_PREFIX + NULL_ID);
+    }
+
+    @Benchmark
+    public Shop queryWithMutexHit() {
+        return cacheClient.queryWithMutex(HIT_ID, Shop.class, DB_FALLBACK);
+    }
+
+    @Benchmark
+    public Shop queryWithMutexNullHit() {
+        return cacheClient.queryWithMutex(NULL_ID, Shop.class, DB_FALLBACK);
+    }
+
+    @Benchmark
+    public Shop queryWithLogicExpireHit() {
+        return cacheClient.queryWithLogicExpire(HIT_ID, Shop.class, DB_FALLBACK);
+    }
+}
@@ -0,0 +1,103 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存值编解码的耗时，不访问redis
+ * codec：json 为原来的hutool JSON；binary 为Kryo二进制；binary-deflate 为超过512字节时压缩的二进制
+ * images：店铺图片地址的数量，图片越多内容越大
+ * 每组参数开始时打印编码后的字节数
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheCodecBenchmark {
+
+    @Param({"json", "binary", "binary-deflate"})
+    private String codecName;
+
+    @Param({"1", "10"})
+    private int images;
+
+    private CacheCodec codec;
+
+    private RedisData redisData;
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (codecName) {
+            case "json":
+                codec = JsonCacheCodec.INSTANCE;
+                break;
+            case "binary":
+                codec = new BinaryCacheCodec(0);
+                break;
+            default:
+                codec = new BinaryCacheCodec(BinaryCacheCodec.DEFAULT_COMPRESS_THRESHOLD);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < images; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRt")
+                    .append(i).append(".jpg");
+        }
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setImages(sb.toString());
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        shop.setCreateTime(LocalDateTime.now());
+        shop.setUpdateTime(LocalDateTime.now());
+        redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setDelta(5L);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        encoded = codec.encode(redisData);
+        System.out.println(codecName + " images=" + images + " size=" + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(redisData);
+    }
+
+    @Benchmark
+    public RedisData decode() {
+        return codec.decode(encoded, Shop.class);
+    }
+}
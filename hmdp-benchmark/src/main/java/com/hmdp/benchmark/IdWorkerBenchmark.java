@@ -0,0 +1,57 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.RedisSegmentIdGenerator;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisIdWorker.nextId 的吞吐量和延迟分布（SampleTime 模式输出 p99）
+ * segmentSize=0 时每个id访问一次redis，作为号段模式的对照
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdWorkerBenchmark {
+
+    @Param({"0", "1000"})
+    private int segmentSize;
+
+    private RedisIdWorker redisIdWorker;
+
+    private RedisIdWorker snowflakeIdWorker;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisState redis) {
+        redisIdWorker = new RedisIdWorker(new RedisSegmentIdGenerator(redis.stringRedisTemplate, segmentSize));
+        snowflakeIdWorker = new RedisIdWorker(new SnowflakeIdGenerator(1));
+    }
+
+    @Benchmark
+    public long redisNextId() {
+        return redisIdWorker.nextId("bench");
+    }
+
+    @Benchmark
+    public long snowflakeNextId() {
+        return snowflakeIdWorker.nextId("bench");
+    }
+}
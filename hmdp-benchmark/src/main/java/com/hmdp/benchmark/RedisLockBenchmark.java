@@ -0,0 +1,92 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.RedisLocks;
+import com.hmdp.utils.SimpleRedisLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次加锁+解锁的吞吐量和延迟分布
+ * type：simple 为 SimpleRedisLock（SET NX）；reentrant 为 RedisReentrantLock（hash + 看门狗，EVALSHA）；
+ * striped 为先获取本地分段锁的两级锁，contended 时大部分竞争在本地失败，不访问redis
+ * uncontended：每个线程使用自己的锁；contended：所有线程竞争同一把锁，返回是否抢到锁
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+@Fork(1)
+public class RedisLockBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LockFactory {
+
+        @Param({"simple", "reentrant", "striped"})
+        private String type;
+
+        private RedisLocks redisLocks;
+
+        @Setup
+        @SuppressWarnings("deprecation")
+        public void setUp(RedisState redis) {
+            if (!"simple".equals(type)) {
+                redisLocks = new RedisLocks(redis.stringRedisTemplate, redis.listenerContainer);
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        ILock lock(RedisState redis, String name) {
+            if (redisLocks == null) {
+                return new SimpleRedisLock(name, redis.stringRedisTemplate);
+            }
+            return "striped".equals(type) ? redisLocks.getStripedLock(name) : redisLocks.getLock(name);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Locks {
+
+        private ILock ownLock;
+
+        private ILock sharedLock;
+
+        @Setup
+        public void setUp(RedisState redis, LockFactory factory, ThreadParams threadParams) {
+            ownLock = factory.lock(redis, "bench:" + threadParams.getThreadIndex());
+            sharedLock = factory.lock(redis, "bench:shared");
+        }
+    }
+
+    @Benchmark
+    public boolean uncontended(Locks locks) {
+        boolean success = locks.ownLock.tryLock();
+        if (success) {
+            locks.ownLock.unlock();
+        }
+        return success;
+    }
+
+    @Benchmark
+    public boolean contended(Locks locks) {
+        boolean success = locks.sharedLock.tryLock();
+        if (success) {
+            locks.sharedLock.unlock();
+        }
+        return success;
+    }
+}
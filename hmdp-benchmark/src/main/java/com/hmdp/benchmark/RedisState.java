@@ -0,0 +1,48 @@
+package com.hmdp.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 基准测试共用的redis连接，地址通过 -Dredis.host、-Dredis.port、-Dredis.password 指定，默认本机6379
+ */
+@State(Scope.Benchmark)
+public class RedisState {
+
+    private LettuceConnectionFactory connectionFactory;
+
+    StringRedisTemplate stringRedisTemplate;
+
+    RedisMessageListenerContainer listenerContainer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "127.0.0.1"),
+                Integer.getInteger("redis.port", 6379));
+        String password = System.getProperty("redis.password");
+        if (password != null) {
+            configuration.setPassword(password);
+        }
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        listenerContainer.destroy();
+        connectionFactory.destroy();
+    }
+}
@@ -0,0 +1,65 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilters;
+import com.hmdp.utils.RedisBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 应用启动时把tb_shop、tb_blog、tb_user中已有的id加载到布隆过滤器，加载完成前过滤器不拦截任何id
+ */
+@Slf4j
+@Component
+public class BloomFilterRunner implements ApplicationRunner {
+
+    private static final int PAGE_SIZE = 10000;
+
+    @Resource
+    private BloomFilters bloomFilters;
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private IBlogService blogService;
+    @Resource
+    private IUserService userService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        load(bloomFilters.shop(), shopService);
+        load(bloomFilters.blog(), blogService);
+        load(bloomFilters.user(), userService);
+    }
+
+    private <T> void load(RedisBloomFilter filter, IService<T> service) {
+        try {
+            //按id分页读取，避免一次读出整张表
+            List<Object> ids = new ArrayList<>();
+            Object lastId = 0L;
+            while (true) {
+                List<Object> page = service.listObjs(new QueryWrapper<T>()
+                        .select("id").gt("id", lastId).orderByAsc("id").last("limit " + PAGE_SIZE));
+                ids.addAll(page);
+                if (page.size() < PAGE_SIZE) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1);
+            }
+            filter.load(ids);
+            log.info("布隆过滤器{}加载完成，共{}条", filter.getName(), ids.size());
+        } catch (Exception e) {
+            //加载失败时过滤器不拦截，不影响查询
+            log.error("布隆过滤器{}加载失败", filter.getName(), e);
+        }
+    }
+}
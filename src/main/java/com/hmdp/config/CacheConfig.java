@@ -0,0 +1,169 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.BloomFilters;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.CacheInvalidationBus;
+import com.hmdp.utils.HotKeys;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisBloomFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存相关的配置，每个缓存区域创建一个 {@link CacheClient}，区域的参数见 hmdp.cache.regions
+ */
+@Configuration
+@EnableConfigurationProperties({CacheProperties.class, HotKeyProperties.class})
+public class CacheConfig implements DisposableBean {
+
+    public static final String REGION_SHOP = "shop";
+    public static final String REGION_SHOP_TYPE = "shop-type";
+    public static final String REGION_USER = "user";
+    public static final String REGION_BLOG = "blog";
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private HotKeyProperties hotKeyProperties;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private BloomFilters bloomFilters;
+
+    private final List<ExecutorService> rebuildExecutors = new CopyOnWriteArrayList<>();
+
+    /**
+     * 缓存值的编码：hmdp.cache.codec=json（默认）或 binary
+     */
+    @Bean
+    public CacheCodec cacheCodec() {
+        String codec = cacheProperties.getCodec();
+        if ("binary".equalsIgnoreCase(codec)) {
+            return new BinaryCacheCodec(cacheProperties.getCompressThreshold());
+        }
+        if ("json".equalsIgnoreCase(codec)) {
+            return JsonCacheCodec.INSTANCE;
+        }
+        throw new IllegalArgumentException("不支持的缓存编码：" + codec);
+    }
+
+    /**
+     * 本节点的热点key探测器，见 hmdp.hotkey
+     */
+    @Bean
+    public HotKeys hotKeys() {
+        return new HotKeys(
+                hotKeyProperties.getWindow().toMillis(),
+                hotKeyProperties.getBuckets(),
+                hotKeyProperties.getThreshold(),
+                hotKeyProperties.getTopK(),
+                hotKeyProperties.getSampleRate());
+    }
+
+    @Bean
+    public CacheClient shopCacheClient(CacheCodec cacheCodec, HotKeys hotKeys) {
+        return createCacheClient(REGION_SHOP, cacheCodec, hotKeys);
+    }
+
+    @Bean
+    public CacheClient shopTypeCacheClient(CacheCodec cacheCodec, HotKeys hotKeys) {
+        return createCacheClient(REGION_SHOP_TYPE, cacheCodec, hotKeys);
+    }
+
+    @Bean
+    public CacheClient userCacheClient(CacheCodec cacheCodec, HotKeys hotKeys) {
+        return createCacheClient(REGION_USER, cacheCodec, hotKeys);
+    }
+
+    @Bean
+    public CacheClient blogCacheClient(CacheCodec cacheCodec, HotKeys hotKeys) {
+        return createCacheClient(REGION_BLOG, cacheCodec, hotKeys);
+    }
+
+    private CacheClient createCacheClient(String name, CacheCodec cacheCodec, HotKeys hotKeys) {
+        CacheProperties.Region region = cacheProperties.getRegion(name);
+        String keyPrefix = region.getKeyPrefix() == null ? "cache:" + name + ":" : region.getKeyPrefix();
+        Duration logicExpireTtl = region.getLogicExpireTtl() == null ? region.getTtl() : region.getLogicExpireTtl();
+        CacheClient cacheClient = new CacheClient(
+                stringRedisTemplate,
+                keyPrefix,
+                region.getTtl().toMillis(),
+                TimeUnit.MILLISECONDS,
+                region.getMutexTtl().toMillis(),
+                TimeUnit.MILLISECONDS,
+                logicExpireTtl.toMillis(),
+                TimeUnit.MILLISECONDS,
+                region.getNullTtl().toMillis(),
+                TimeUnit.MILLISECONDS)
+                .withName(name)
+                .withCodec(cacheCodec)
+                .withEarlyRefresh(region.getEarlyRefreshBeta())
+                .withRebuildExecutor(createRebuildExecutor(name, region));
+        if (region.getLocalMaxSize() > 0) {
+            cacheClient.withLocalCache(region.getLocalMaxSize(), region.getLocalTtl().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (region.getBloomFilter() != null) {
+            RedisBloomFilter bloomFilter = bloomFilters.get(region.getBloomFilter());
+            if (bloomFilter == null) {
+                throw new IllegalArgumentException("不存在的布隆过滤器：" + region.getBloomFilter());
+            }
+            cacheClient.withBloomFilter(bloomFilter);
+        }
+        if (hotKeyProperties.isEnabled() && region.isHotKeyDetection()) {
+            cacheClient.withHotKeyDetection(hotKeys.detector(name),
+                    hotKeyProperties.getLocalMaxSize(), hotKeyProperties.getLocalTtl().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return cacheClient
+                .withMeterRegistry(meterRegistry)
+                .listenInvalidation(cacheInvalidationBus);
+    }
+
+    /**
+     * 每个区域单独的有界重建线程池，线程数、队列长度、任务耗时等指标见 executor.* {name=cache-rebuild-区域名称}
+     */
+    private ExecutorService createRebuildExecutor(String name, CacheProperties.Region region) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                region.getRebuildThreads(),
+                region.getRebuildThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(region.getRebuildQueueCapacity()),
+                new CustomizableThreadFactory("cache-rebuild-" + name + "-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        rebuildExecutors.add(executor);
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, "cache-rebuild-" + name, Tags.of("cache", name));
+    }
+
+    @Override
+    public void destroy() {
+        for (ExecutorService executor : rebuildExecutors) {
+            executor.shutdown();
+        }
+    }
+}
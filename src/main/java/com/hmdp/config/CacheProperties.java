@@ -0,0 +1,106 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.BinaryCacheCodec;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存配置 hmdp.cache，每个缓存区域（shop、shop-type、user、blog）单独配置TTL、本地缓存和重建线程池
+ */
+@Data
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 缓存值的编码：json 或 binary
+     */
+    private String codec = "json";
+
+    /**
+     * 二进制编码超过该字节数时压缩
+     */
+    private int compressThreshold = BinaryCacheCodec.DEFAULT_COMPRESS_THRESHOLD;
+
+    /**
+     * 缓存区域，key为区域名称
+     */
+    private Map<String, Region> regions = new LinkedHashMap<>();
+
+    /**
+     * 获取缓存区域的配置，未配置时使用默认值
+     *
+     * @param name
+     * @return
+     */
+    public Region getRegion(String name) {
+        return regions.computeIfAbsent(name, k -> new Region());
+    }
+
+    @Data
+    public static class Region {
+
+        /**
+         * redis key的前缀，默认为 cache:{区域名称}:
+         */
+        private String keyPrefix;
+
+        /**
+         * 缓存时间
+         */
+        private Duration ttl = Duration.ofMinutes(30);
+
+        /**
+         * 逻辑过期时间，默认与缓存时间相同
+         */
+        private Duration logicExpireTtl;
+
+        /**
+         * 互斥锁时长
+         */
+        private Duration mutexTtl = Duration.ofSeconds(10);
+
+        /**
+         * 缓存穿透时空值的缓存时间
+         */
+        private Duration nullTtl = Duration.ofMinutes(2);
+
+        /**
+         * 本地缓存的条数，0表示不使用本地缓存
+         */
+        private long localMaxSize = 0;
+
+        /**
+         * 本地缓存写入后的过期时间
+         */
+        private Duration localTtl = Duration.ofSeconds(60);
+
+        /**
+         * 提前刷新的系数，0表示不提前刷新
+         */
+        private double earlyRefreshBeta = 1.0;
+
+        /**
+         * 拦截不存在id的布隆过滤器名称（shop、blog、user），为空时不拦截
+         */
+        private String bloomFilter;
+
+        /**
+         * 是否探测热点key并缓存在本地，见 hmdp.hotkey
+         */
+        private boolean hotKeyDetection = true;
+
+        /**
+         * 后台重建缓存的线程数
+         */
+        private int rebuildThreads = 2;
+
+        /**
+         * 重建任务的队列长度，队列满时本次不重建，继续返回旧数据
+         */
+        private int rebuildQueueCapacity = 100;
+    }
+}
@@ -0,0 +1,51 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheClient;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 各缓存区域的命中率、耗时、互斥锁竞争、缓存值大小等统计：GET /actuator/cachestats 和 /actuator/cachestats/{区域名称}
+ * 详细的指标（分位数、按时间序列）见 /actuator/metrics/cache.*
+ */
+@Component
+@Endpoint(id = "cachestats")
+public class CacheStatsEndpoint {
+
+    @Resource
+    private List<CacheClient> cacheClients;
+
+    @ReadOperation
+    public Map<String, Object> caches() {
+        Map<String, Object> caches = new LinkedHashMap<>();
+        for (CacheClient cacheClient : cacheClients) {
+            caches.put(cacheClient.getName(), stats(cacheClient));
+        }
+        return caches;
+    }
+
+    @ReadOperation
+    public Map<String, Object> cache(@Selector String name) {
+        for (CacheClient cacheClient : cacheClients) {
+            if (cacheClient.getName().equals(name)) {
+                return stats(cacheClient);
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, Object> stats(CacheClient cacheClient) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("keyPrefix", cacheClient.getKeyPrefix());
+        stats.put("localCacheSize", cacheClient.localCacheSize());
+        stats.putAll(cacheClient.getMetrics().snapshot());
+        return stats;
+    }
+}
@@ -0,0 +1,54 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 热点key探测配置 hmdp.hotkey
+ */
+@Data
+@ConfigurationProperties(prefix = "hmdp.hotkey")
+public class HotKeyProperties {
+
+    /**
+     * 是否开启热点key探测
+     */
+    private boolean enabled = true;
+
+    /**
+     * 滑动窗口长度
+     */
+    private Duration window = Duration.ofSeconds(10);
+
+    /**
+     * 窗口划分的时间片个数
+     */
+    private int buckets = 5;
+
+    /**
+     * 本节点窗口内访问次数达到该值即为热点
+     */
+    private long threshold = 500;
+
+    /**
+     * 每个探测器最多保留的热点key个数
+     */
+    private int topK = 50;
+
+    /**
+     * 采样率，(0, 1]
+     */
+    private double sampleRate = 1.0;
+
+    /**
+     * 热点key在本地缓存的时间
+     */
+    private Duration localTtl = Duration.ofSeconds(3);
+
+    /**
+     * 每个区域本地缓存的热点key个数上限
+     */
+    private long localMaxSize = 1000;
+}
@@ -0,0 +1,43 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.HotKeys;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 本节点探测到的热点key及其在滑动窗口内估算的访问次数：GET /actuator/hotkeys 和 /actuator/hotkeys/{探测器名称}
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeysEndpoint {
+
+    @Resource
+    private HotKeys hotKeys;
+
+    @ReadOperation
+    public Map<String, Map<String, Long>> hotKeys() {
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        for (HotKeyDetector detector : hotKeys.all()) {
+            result.put(detector.getName(), detector.hotKeys());
+        }
+        return result;
+    }
+
+    @ReadOperation
+    public Map<String, Long> hotKeys(@Selector String name) {
+        for (HotKeyDetector detector : hotKeys.all()) {
+            if (detector.getName().equals(name)) {
+                return detector.hotKeys();
+            }
+        }
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.LeasedSnowflakeIdGenerator;
+import com.hmdp.utils.RedisSegmentIdGenerator;
+import com.hmdp.utils.WorkerIdLease;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * id生成方式的配置：hmdp.id-worker.type=redis（默认，redis号段）或 snowflake（本地雪花算法）
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.id-worker.type", havingValue = "redis", matchIfMissing = true)
+    public IdGenerator redisSegmentIdGenerator(StringRedisTemplate stringRedisTemplate,
+                                               @Value("${hmdp.id-worker.segment-size:1000}") int segmentSize) {
+        return new RedisSegmentIdGenerator(stringRedisTemplate, segmentSize);
+    }
+
+    @Bean(initMethod = "acquire", destroyMethod = "release")
+    @ConditionalOnProperty(name = "hmdp.id-worker.type", havingValue = "snowflake")
+    public WorkerIdLease workerIdLease(StringRedisTemplate stringRedisTemplate) {
+        return new WorkerIdLease(stringRedisTemplate);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.id-worker.type", havingValue = "snowflake")
+    public IdGenerator snowflakeIdGenerator(WorkerIdLease workerIdLease) {
+        return new LeasedSnowflakeIdGenerator(workerIdLease);
+    }
+}
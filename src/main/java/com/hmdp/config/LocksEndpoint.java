@@ -0,0 +1,27 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.RedisLocks;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本节点当前持有的分布式锁及持有时间：GET /actuator/locks
+ * 获取耗时、失败次数等统计见 /actuator/metrics/lock.acquire、lock.hold、lock.lease.lost
+ */
+@Component
+@Endpoint(id = "locks")
+public class LocksEndpoint {
+
+    @Resource
+    private RedisLocks redisLocks;
+
+    @ReadOperation
+    public List<Map<String, Object>> locks() {
+        return redisLocks.getLockMetrics().heldLocks();
+    }
+}
@@ -0,0 +1,66 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 登录状态配置 hmdp.login
+ */
+@Data
+@ConfigurationProperties(prefix = "hmdp.login")
+public class LoginProperties {
+
+    public enum TokenMode {
+        /**
+         * 随机token，用户信息保存在redis的 login:token:{token} 中
+         */
+        REDIS,
+        /**
+         * 用户信息签名后放在token中，各节点本地验证，退出登录的token记录在 login:revoked 中
+         */
+        SIGNED
+    }
+
+    /**
+     * 登录时发放的token类型；两种token都可以验证，切换后已发放的token仍然有效
+     */
+    private TokenMode tokenMode = TokenMode.REDIS;
+
+    /**
+     * 签名token的HMAC密钥，至少32字节，所有节点必须相同；为空时不能验证签名token
+     */
+    private String signingSecret;
+
+    /**
+     * 签名token的有效期，签名token不能续期，过期后需要重新登录
+     */
+    private Duration signedTokenTtl = Duration.ofHours(12);
+
+    /**
+     * token对应的用户在本地缓存的时间；其他节点退出登录时由失效通知立即清除，
+     * 通知丢失时也会在下一次续期发现redis中的登录状态已不存在
+     */
+    private Duration sessionCacheTtl = Duration.ofMinutes(5);
+
+    /**
+     * 本地缓存的token个数上限
+     */
+    private long sessionCacheMaxSize = 10000;
+
+    /**
+     * 不存在或已过期的token在本地缓存的时间
+     */
+    private Duration anonymousCacheTtl = Duration.ofSeconds(5);
+
+    /**
+     * 本地缓存的不存在或已过期token个数上限，与登录状态的缓存分开
+     */
+    private long anonymousCacheMaxSize = 1000;
+
+    /**
+     * 同一个token续期redis中登录状态的最小间隔，间隔内的请求不再执行EXPIRE
+     */
+    private Duration refreshInterval = Duration.ofMinutes(1);
+}
@@ -1,19 +1,21 @@
 package com.hmdp.config;
 
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.LoginSessions;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
 
 @Configuration
+@EnableConfigurationProperties(LoginProperties.class)
 public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessions loginSessions;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -29,7 +31,7 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/user/login")
                 .order(1);
         // token刷新的拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate))
+        registry.addInterceptor(new RefreshTokenInterceptor(loginSessions))
                 .addPathPatterns("/**")
                 .order(0);
     }
@@ -0,0 +1,31 @@
+package com.hmdp.config;
+
+import com.hmdp.service.ISeckillVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 应用启动时预热所有未结束的秒杀券，保证秒杀请求不需要查询数据库
+ */
+@Slf4j
+@Component
+public class SeckillWarmUpRunner implements ApplicationRunner {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            int count = seckillVoucherService.warmUpActiveVouchers();
+            log.info("秒杀券预热完成，共{}张", count);
+        } catch (Exception e) {
+            //预热失败不影响启动，秒杀时会按需预热
+            log.error("秒杀券预热失败", e);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.hmdp.entity.User;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilters;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -33,6 +34,8 @@ public class UserController {
     private IUserService userService;
     @Resource
     private IUserInfoService userInfoService;
+    @Resource
+    private BloomFilters bloomFilters;
     /**
      * 发送手机验证码
      */
@@ -93,6 +96,10 @@ public class UserController {
 
     @GetMapping("/{id}")
     public Result queryUserById(@PathVariable("id") Long userId) {
+        // 布隆过滤器判断用户一定不存在，不查询数据库
+        if (!bloomFilters.user().mightContain(userId)) {
+            return Result.ok();
+        }
         // 查询详情
         User user = userService.getById(userId);
         if (user == null) {
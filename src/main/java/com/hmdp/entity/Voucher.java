@@ -78,6 +78,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private Integer stock;
 
+    /**
+     * 库存分段数，大于1时库存拆分到多个redis key中扣减，用于热门秒杀券
+     */
+    @TableField(exist = false)
+    private Integer stockBuckets;
+
     /**
      * 生效时间
      */
@@ -13,4 +13,47 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface ISeckillVoucherService extends IService<SeckillVoucher> {
 
+    /**
+     * 预热秒杀券：把库存、秒杀时间和已下单用户写入redis
+     * @param voucher
+     */
+    void warmUp(SeckillVoucher voucher);
+
+    /**
+     * 预热所有未结束的秒杀券
+     * @return 预热的秒杀券数量
+     */
+    int warmUpActiveVouchers();
+
+    /**
+     * 获取秒杀券的库存分段数
+     * @param voucherId
+     * @return 1代表库存未分段，保存在 seckill:stock:{voucherId} 中
+     */
+    int getStockBuckets(Long voucherId);
+
+    /**
+     * 从库存分段中扣减库存
+     * @param voucherId
+     * @param bucket 分段序号
+     * @param count 扣减数量
+     * @return 分段库存不足时返回false，且不扣减
+     */
+    boolean takeBucketStock(Long voucherId, int bucket, int count);
+
+    /**
+     * 把库存归还到库存分段中
+     * @param voucherId
+     * @param bucket 分段序号
+     * @param count 归还数量
+     */
+    void returnBucketStock(Long voucherId, int bucket, int count);
+
+    /**
+     * 查询各库存分段的库存合计
+     * @param voucherId
+     * @param buckets 分段数
+     * @return
+     */
+    int getTotalBucketStock(Long voucherId, int buckets);
 }
@@ -21,6 +21,13 @@ public interface IShopService extends IService<Shop> {
      */
     Result queryShopById(Long id);
 
+    /**
+     * 新增店铺
+     * @param shop
+     * @return 店铺id
+     */
+    Result saveShop(Shop shop);
+
     /**
      * 更新店铺信息
      * @param shop
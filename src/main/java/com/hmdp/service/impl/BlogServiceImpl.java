@@ -2,8 +2,11 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.config.HotKeyProperties;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
@@ -14,6 +17,12 @@ import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilters;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidationBus;
+import com.hmdp.utils.CacheInvalidationListener;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.HotKeys;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
@@ -21,11 +30,9 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.FEED_KEY;
@@ -48,6 +55,63 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private IUserService userService;
     @Resource
     private IFollowService followService;
+    @Resource
+    private BloomFilters bloomFilters;
+    /**
+     * 博客作者等用户信息的缓存，见 hmdp.cache.regions.user
+     */
+    @Resource
+    private CacheClient userCacheClient;
+    /**
+     * 博客的缓存，见 hmdp.cache.regions.blog
+     */
+    @Resource
+    private CacheClient blogCacheClient;
+    @Resource
+    private HotKeys hotKeys;
+    @Resource
+    private HotKeyProperties hotKeyProperties;
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    /**
+     * 点赞集合 blog:liked:{id} 的热点探测，hmdp.hotkey.enabled 为false时为null
+     */
+    private HotKeyDetector likedDetector;
+    /**
+     * 热点笔记的点赞状态和前5个点赞用户，key为 blog:liked:{id}:{userId} 和 blog:liked:{id}:top5；
+     * hmdp.hotkey.enabled 为false时为null，直接读取redis
+     */
+    private Cache<String, Object> likedCache;
+
+    @PostConstruct
+    private void initLikedCache() {
+        if (!hotKeyProperties.isEnabled()) {
+            return;
+        }
+        likedDetector = hotKeys.detector("blog-liked");
+        likedCache = Caffeine.newBuilder()
+                .maximumSize(hotKeyProperties.getLocalMaxSize())
+                .expireAfterWrite(hotKeyProperties.getLocalTtl())
+                .build();
+        //点赞或取消点赞后各节点清除该笔记的本地点赞缓存
+        cacheInvalidationBus.subscribe(RedisConstants.BLOG_LIKED_KEY, new CacheInvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                likedCache.invalidate(key);
+            }
+
+            @Override
+            public void invalidatePrefix(String prefix) {
+                likedCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+            }
+
+            @Override
+            public void invalidateAll() {
+                likedCache.invalidateAll();
+            }
+        });
+    }
 
     /**
      * 保存博客
@@ -63,6 +127,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (!isSuccess) {
             return Result.ok("新增博客失败！");
         }
+        bloomFilters.blog().add(blog.getId());
         List<Follow> follows = followService.query().eq("follow_user_id", userId).list();
         for (Follow follow : follows) {
             //推送
@@ -102,18 +167,35 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 获取当前页数据
         List<Blog> records = page.getRecords();
         // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        this.queryBlogUsers(records);
+        records.forEach(this::isBlogLiked);
         return Result.ok(records);
     }
 
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+    /**
+     * 批量查询博客作者，从缓存一次读取，未命中的用户一次查询数据库
+     * @param blogs
+     */
+    private void queryBlogUsers(List<Blog> blogs) {
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toList());
+        List<UserDTO> users = queryUsers(userIds);
+        for (int i = 0; i < blogs.size(); i++) {
+            UserDTO user = users.get(i);
+            if (user != null) {
+                blogs.get(i).setName(user.getNickName());
+                blogs.get(i).setIcon(user.getIcon());
+            }
+        }
+    }
+
+    /**
+     * 根据id批量查询用户，结果与ids顺序一致
+     * @param ids
+     * @return
+     */
+    private List<UserDTO> queryUsers(List<Long> ids) {
+        return userCacheClient.queryMany(ids, UserDTO.class, missing -> userService.listByIds(missing).stream()
+                .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))));
     }
 
     /**
@@ -123,16 +205,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      */
     @Override
     public Result queryBlogById(Long id) {
-        //查询blog
-        Blog blog = blogService.getById(id);
-        if (blog == null) {
+        //查询blog，布隆过滤器判断笔记一定不存在时不查询数据库
+        Blog cached = blogCacheClient.queryWithMutex(id, Blog.class, blogService::getById);
+        if (cached == null) {
             return Result.fail("笔记不不在！");
         }
+        //缓存的对象可能在本地缓存中共享，复制后再填充作者和点赞信息
+        Blog blog = BeanUtil.copyProperties(cached, Blog.class);
         //查询blog有关的用户
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+        queryBlogUsers(Collections.singletonList(blog));
         //查询blog是否被当前用户点赞
         isBlogLiked(blog);
         return Result.ok(blog);
@@ -151,9 +232,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         //1、获取登录用户，判断用户是否点赞
         Long userId = UserHolder.getUser().getId();
         String key = RedisConstants.BLOG_LIKED_KEY + blog.getId();
-
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        blog.setIsLike(score != null);
+        String localKey = key + ":" + userId;
+        Boolean liked = (Boolean) getLiked(localKey);
+        if (liked == null) {
+            Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
+            liked = score != null;
+            //热点笔记的点赞状态在本地缓存一小段时间
+            putLikedIfHot(key, localKey, liked);
+        }
+        blog.setIsLike(liked);
     }
 
     /**
@@ -172,12 +259,16 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
             if (isSuccess) {
                 stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
+                blogCacheClient.delete(id);
+                cacheInvalidationBus.publishPrefix(key + ":");
             }
         } else {
             //3、如果已点赞，数据库点赞减一，删除redis中set的用户
             boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
             if (isSuccess) {
                 stringRedisTemplate.opsForZSet().remove(key, userId.toString());
+                blogCacheClient.delete(id);
+                cacheInvalidationBus.publishPrefix(key + ":");
             }
         }
         return Result.ok();
@@ -191,22 +282,43 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Override
     public Result queryBlogLikes(Long id) {
         String key = RedisConstants.BLOG_LIKED_KEY + id;
-        //1、查询前5个点赞用户
-        Set<String> top5 = stringRedisTemplate.opsForZSet().range(key, 0, 4);
-        if (top5 == null || top5.isEmpty()) {
+        String localKey = key + ":top5";
+        @SuppressWarnings("unchecked")
+        List<Long> ids = (List<Long>) getLiked(localKey);
+        if (ids == null) {
+            //1、查询前5个点赞用户
+            Set<String> top5 = stringRedisTemplate.opsForZSet().range(key, 0, 4);
+            //2、解析用户id
+            ids = top5 == null ? Collections.emptyList() : top5.stream().map(Long::valueOf).collect(Collectors.toList());
+            //热点笔记的前5个点赞用户在本地缓存一小段时间
+            putLikedIfHot(key, localKey, ids);
+        }
+        if (ids.isEmpty()) {
             return Result.ok(Collections.emptyList());
         }
-        //2、解析用户id
-        List<Long> ids = top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        String idStr = StrUtil.join(",", ids);
-        //根据用户id查询用户
-        List<UserDTO> userDTOs = userService.query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list()
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+        //根据用户id查询用户，保持点赞顺序
+        List<UserDTO> userDTOs = queryUsers(ids).stream()
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
         return Result.ok(userDTOs);
     }
 
+    /**
+     * 读取本地缓存的点赞信息，未开启热点探测时返回null
+     */
+    private Object getLiked(String localKey) {
+        return likedCache == null ? null : likedCache.getIfPresent(localKey);
+    }
+
+    /**
+     * 点赞集合 key 是热点时，把点赞信息放入本地缓存
+     */
+    private void putLikedIfHot(String key, String localKey, Object value) {
+        if (likedDetector != null && likedDetector.record(key)) {
+            likedCache.put(localKey, value);
+        }
+    }
+
     /**
      * 根据用户id查询blog
      * @param current
@@ -259,9 +371,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 5.根据id查询blog
         String idStr = StrUtil.join(",", ids);
         List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+        // 5.1.批量查询blog有关的用户
+        queryBlogUsers(blogs);
         for (Blog blog : blogs) {
-            // 5.1.查询blog有关的用户
-            queryBlogUser(blog);
             // 5.2.查询blog是否被点赞
             isBlogLiked(blog);
         }
@@ -1,11 +1,32 @@
 package com.hmdp.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.RedisLocks;
+import com.hmdp.utils.RedisScripts;
+import com.hmdp.utils.SeckillSoldOutCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.*;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务实现类
@@ -14,7 +35,236 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2022-01-04
  */
+@Slf4j
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
 
+    @Resource
+    private VoucherOrderMapper voucherOrderMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillSoldOutCache seckillSoldOutCache;
+    @Resource
+    private RedisLocks redisLocks;
+
+    private static final DefaultRedisScript<Long> BUCKET_SCRIPT = RedisScripts.load("seckill_bucket.lua", Long.class);
+    private static final DefaultRedisScript<Long> BUCKET_MOVE_SCRIPT = RedisScripts.load("seckill_bucket_move.lua", Long.class);
+
+    /**
+     * 分段库存对账的锁，同一时间只有一个节点对账
+     */
+    private static final String RECONCILE_LOCK = "seckill:stock-reconcile";
+
+    /**
+     * 秒杀券的库存分段数，创建后不再变化，每个节点只需从redis读取一次；预热时按数据库中的值刷新
+     */
+    private final Map<Long, Integer> stockBuckets = new ConcurrentHashMap<>();
+
+    @Override
+    public void warmUp(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        //分段数以数据库为准，redis数据丢失后重新预热时各节点仍使用相同的分段方式
+        int buckets = voucher.getStockBuckets() == null ? 1 : Math.max(voucher.getStockBuckets(), 1);
+        //1、查询已下单的用户，用于一人一单的判断
+        List<Object> userIds = voucherOrderMapper.selectObjs(
+                new QueryWrapper<VoucherOrder>().select("user_id").eq("voucher_id", voucherId));
+        //2、秒杀时间，以毫秒时间戳保存，lua脚本中直接比较
+        Map<String, String> meta = new HashMap<>(4);
+        meta.put(SECKILL_BEGIN_TIME_FIELD, String.valueOf(toEpochMilli(voucher.getBeginTime())));
+        meta.put(SECKILL_END_TIME_FIELD, String.valueOf(toEpochMilli(voucher.getEndTime())));
+        meta.put(SECKILL_BUCKETS_FIELD, String.valueOf(buckets));
+        //3、库存key及写入的库存，库存平均分配到各个分段中
+        Map<String, Integer> stocks = new LinkedHashMap<>(buckets * 2);
+        if (buckets > 1) {
+            int stock = voucher.getStock();
+            for (int i = 0; i < buckets; i++) {
+                stocks.put(bucketKey(voucherId, i), stock / buckets + (i < stock % buckets ? 1 : 0));
+            }
+        } else {
+            stocks.put(SECKILL_STOCK_KEY + voucherId, voucher.getStock());
+        }
+        //4、通过管道一次写入redis
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            //redis中的库存随秒杀实时扣减，已存在时以redis为准，不能被数据库中尚未同步的库存覆盖
+            for (Map.Entry<String, Integer> entry : stocks.entrySet()) {
+                conn.setNX(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            conn.hMSet(SECKILL_VOUCHER_KEY + voucherId, meta);
+            if (!userIds.isEmpty()) {
+                conn.sAdd(SECKILL_ORDER_KEY + voucherId, userIds.stream().map(String::valueOf).toArray(String[]::new));
+            }
+            return null;
+        });
+        stockBuckets.put(voucherId, buckets);
+        //5、本次预热写入了库存（如redis数据丢失后重新预热）且库存大于0时，才清除各节点的售罄标记；
+        //库存key已存在时以redis为准，不能因为数据库中尚未同步的库存清除售罄标记
+        int i = 0;
+        for (Integer stock : stocks.values()) {
+            if (Boolean.TRUE.equals(results.get(i++)) && stock > 0) {
+                seckillSoldOutCache.publishRestock(voucherId);
+                break;
+            }
+        }
+        log.debug("秒杀券{}预热完成，库存：{}，分段数：{}，已下单用户数：{}", voucherId, voucher.getStock(), buckets, userIds.size());
+    }
+
+    @Override
+    public int warmUpActiveVouchers() {
+        List<SeckillVoucher> vouchers = query().gt("end_time", LocalDateTime.now()).list();
+        for (SeckillVoucher voucher : vouchers) {
+            warmUp(voucher);
+        }
+        return vouchers.size();
+    }
+
+    @Override
+    public int getStockBuckets(Long voucherId) {
+        Integer buckets = stockBuckets.get(voucherId);
+        if (buckets != null) {
+            return buckets;
+        }
+        List<Object> meta = stringRedisTemplate.opsForHash().multiGet(
+                SECKILL_VOUCHER_KEY + voucherId, Arrays.asList(SECKILL_BUCKETS_FIELD, SECKILL_BEGIN_TIME_FIELD));
+        if (meta.get(1) == null) {
+            //尚未预热，不缓存，预热后再读取
+            return 1;
+        }
+        buckets = meta.get(0) == null ? 1 : Integer.parseInt(meta.get(0).toString());
+        stockBuckets.put(voucherId, buckets);
+        return buckets;
+    }
+
+    @Override
+    public boolean takeBucketStock(Long voucherId, int bucket, int count) {
+        Long result = stringRedisTemplate.execute(
+                BUCKET_SCRIPT, Collections.singletonList(bucketKey(voucherId, bucket)), String.valueOf(count));
+        return result != null && result == 1;
+    }
+
+    @Override
+    public void returnBucketStock(Long voucherId, int bucket, int count) {
+        stringRedisTemplate.opsForValue().increment(bucketKey(voucherId, bucket), count);
+    }
+
+    @Override
+    public int getTotalBucketStock(Long voucherId, int buckets) {
+        return Arrays.stream(readBucketStocks(voucherId, buckets)).sum();
+    }
+
+    /**
+     * 分段库存对账：
+     * 1、正常情况下redis先扣减库存，订单写入数据库后才扣减数据库库存，所以redis中的总库存只会少于或等于数据库，
+     *    多于数据库说明出现了不一致（如人工修改了数据库库存），需要从分段中扣回，避免超卖
+     * 2、某个分段库存耗尽而其他分段还有库存时，从库存最多的分段匀出一半，减少下单时跨分段的重试
+     * 各节点都会触发对账，获取到分布式锁的节点才执行，避免多个节点同时扣回或移动库存
+     */
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000)
+    public void reconcileStockBuckets() {
+        ILock lock = redisLocks.getLock(RECONCILE_LOCK);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            List<SeckillVoucher> vouchers;
+            try {
+                vouchers = query().gt("end_time", LocalDateTime.now()).list();
+            } catch (Exception e) {
+                log.error("查询秒杀券失败，跳过分段库存对账", e);
+                return;
+            }
+            for (SeckillVoucher voucher : vouchers) {
+                int buckets = getStockBuckets(voucher.getVoucherId());
+                if (buckets <= 1) {
+                    continue;
+                }
+                try {
+                    reconcileStockBuckets(voucher, buckets);
+                } catch (Exception e) {
+                    log.error("秒杀券{}分段库存对账失败", voucher.getVoucherId(), e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reconcileStockBuckets(SeckillVoucher voucher, int buckets) {
+        Long voucherId = voucher.getVoucherId();
+        int[] stocks = readBucketStocks(voucherId, buckets);
+        int total = Arrays.stream(stocks).sum();
+        //1、redis中的库存多于数据库，从库存多的分段开始扣回多出的部分
+        int surplus = total - voucher.getStock();
+        if (surplus > 0) {
+            log.warn("秒杀券{}分段库存合计{}，多于数据库库存{}，扣回{}", voucherId, total, voucher.getStock(), surplus);
+            for (int i = 0; i < buckets && surplus > 0; i++) {
+                int bucket = richestBucket(stocks);
+                int count = Math.min(surplus, stocks[bucket]);
+                if (count <= 0) {
+                    break;
+                }
+                if (takeBucketStock(voucherId, bucket, count)) {
+                    surplus -= count;
+                }
+                stocks[bucket] = 0;
+            }
+            return;
+        }
+        //2、把库存从最多的分段匀给已经耗尽的分段
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (stocks[bucket] > 0) {
+                continue;
+            }
+            int richest = richestBucket(stocks);
+            int count = stocks[richest] / 2;
+            if (count <= 0) {
+                //总库存已不足以分配
+                break;
+            }
+            //在一个脚本中从源分段移到目标分段，下单线程不会看到库存暂时消失
+            if (moveBucketStock(voucherId, richest, bucket, count)) {
+                stocks[richest] -= count;
+                stocks[bucket] += count;
+            }
+        }
+    }
+
+    private boolean moveBucketStock(Long voucherId, int from, int to, int count) {
+        Long result = stringRedisTemplate.execute(BUCKET_MOVE_SCRIPT,
+                Arrays.asList(bucketKey(voucherId, from), bucketKey(voucherId, to)), String.valueOf(count));
+        return result != null && result == 1;
+    }
+
+    private int[] readBucketStocks(Long voucherId, int buckets) {
+        List<String> keys = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            keys.add(bucketKey(voucherId, i));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        int[] stocks = new int[buckets];
+        for (int i = 0; i < buckets; i++) {
+            String value = values == null ? null : values.get(i);
+            stocks[i] = value == null ? 0 : Math.max(Integer.parseInt(value), 0);
+        }
+        return stocks;
+    }
+
+    private static int richestBucket(int[] stocks) {
+        int richest = 0;
+        for (int i = 1; i < stocks.length; i++) {
+            if (stocks[i] > stocks[richest]) {
+                richest = i;
+            }
+        }
+        return richest;
+    }
+
+    private static String bucketKey(Long voucherId, int bucket) {
+        return SECKILL_STOCK_KEY + voucherId + ":" + bucket;
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
 }
@@ -11,6 +11,7 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.BloomFilters;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisData;
@@ -44,23 +45,17 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
-//    @Resource
-//    private CacheClient cacheClient;
+    @Resource
+    private BloomFilters bloomFilters;
+
+    /**
+     * 店铺缓存，见 hmdp.cache.regions.shop
+     */
+    @Resource(name = "shopCacheClient")
+    private CacheClient cacheClient;
 
     @Override
     public Result queryShopById(Long id) {
-        //使用工具类的方法解决缓存穿透
-        CacheClient cacheClient = new CacheClient(
-                stringRedisTemplate,
-                RedisConstants.CACHE_SHOP_KEY,  //缓存名
-                RedisConstants.CACHE_SHOP_TTL,  //缓存时间
-                TimeUnit.MINUTES,               //缓存分钟
-                RedisConstants.LOCK_SHOP_TTL,   //互斥锁时长
-                TimeUnit.SECONDS,               //互斥锁秒数
-                RedisConstants.CACHE_SHOP_TTL,  //逻辑过期时间
-                TimeUnit.MINUTES,               //过期分钟
-                RedisConstants.CACHE_NULL_TTL,  //击穿返回空值时长
-                TimeUnit.MINUTES);              //空值分钟
         //使用互斥锁查询
 //        Shop shop = cacheClient.queryWithMutex(id, Shop.class, this::getById);
         //使用逻辑过期查询
@@ -219,6 +214,18 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     }
 
 
+    /**
+     * 新增店铺，并把店铺id加入布隆过滤器
+     * @param shop
+     * @return
+     */
+    @Override
+    public Result saveShop(Shop shop) {
+        save(shop);
+        bloomFilters.shop().add(shop.getId());
+        return Result.ok(shop.getId());
+    }
+
     /**
      * 更新店铺
      * @param shop
@@ -232,8 +239,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         //1、更新数据库
         updateById(shop);
-        //2、删除缓存
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + shop.getId());
+        //2、删除缓存，并通知其他节点清除本地缓存
+        cacheClient.delete(shop.getId());
         return Result.ok();
     }
 
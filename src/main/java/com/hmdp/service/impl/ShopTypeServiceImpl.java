@@ -1,19 +1,15 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONArray;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
-import com.hmdp.utils.RedisConstants;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.CacheClient;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * <p>
@@ -26,22 +22,20 @@ import java.util.List;
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    /**
+     * 店铺类型缓存，见 hmdp.cache.regions.shop-type
+     */
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private CacheClient shopTypeCacheClient;
 
     @Override
     public Result queryShopType() {
-        String shopTypeJson = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOP_KEY + "shop-type");
-        if (StrUtil.isNotBlank(shopTypeJson)){
-            JSONArray shopTypeList = JSONUtil.parseArray(shopTypeJson);
-            return Result.ok(shopTypeList);
-        }
         //商铺类型不存在就去查数据库，查完并缓存
-        List<ShopType> shopTypeList = query().orderByAsc("sort").list();
-        if (shopTypeList == null){
+        ShopType[] shopTypes = shopTypeCacheClient.queryWithLogicExpire("list", ShopType[].class,
+                id -> query().orderByAsc("sort").list().toArray(new ShopType[0]));
+        if (shopTypes == null || shopTypes.length == 0){
             return Result.fail("缺少店铺类型！");
         }
-        stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + "shop-type", JSONUtil.toJsonStr(shopTypeList));
-        return Result.ok(shopTypeList);
+        return Result.ok(Arrays.asList(shopTypes));
     }
 }
@@ -2,6 +2,7 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
@@ -10,6 +11,8 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilters;
+import com.hmdp.utils.LoginSessions;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
@@ -27,7 +30,6 @@ import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -50,6 +52,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private BloomFilters bloomFilters;
+
+    @Resource
+    private LoginSessions loginSessions;
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
         //校验手机号
@@ -87,19 +95,14 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             //用户不存在，先创建用户再保存用户
             user = createUserWithPhone(loginForm.getPhone());
         }
-        //创建用户的token
-        String token = UUID.randomUUID().toString();
-        //创建用户保存到redis中的key
-        String tokenKey = LOGIN_USER_KEY + token;
         //保存用户信息到redis中
         UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
         Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
                 CopyOptions.create()
                         .setIgnoreNullValue(true)
                         .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
-        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
-        //设置token有效期
-        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        //创建用户的token：保存到redis中并设置有效期，或签名后直接返回（hmdp.login.token-mode）
+        String token = loginSessions.create(userDTO, userMap);
         return Result.ok(token);
     }
 
@@ -168,7 +171,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Override
     public Result logout(HttpServletRequest request) {
         String token = request.getHeader("authorization");
-        stringRedisTemplate.opsForHash().entries(LOGIN_USER_KEY + token).clear();
+        if (CharSequenceUtil.isNotBlank(token)) {
+            //删除redis中的登录状态，并清除各节点的本地缓存
+            loginSessions.remove(token);
+        }
         return Result.ok();
     }
 
@@ -183,6 +189,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
                 .nickName("user_" + RandomUtil.randomString(10))
                 .build();
         save(user);
+        bloomFilters.user().add(user.getId());
         return user;
     }
 }
@@ -1,5 +1,9 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
@@ -7,17 +11,44 @@ import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.ILock;
 import com.hmdp.utils.RedisIdWorker;
-import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.RedisLocks;
+import com.hmdp.utils.RedisScripts;
+import com.hmdp.utils.SeckillSoldOutCache;
 import com.hmdp.utils.UserHolder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -37,6 +68,313 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private RedisIdWorker redisIdWorker;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillSoldOutCache seckillSoldOutCache;
+    @Resource
+    private RedisLocks redisLocks;
+    /**
+     * 自身的代理对象，异步线程中没有AopContext，只能通过注入的代理开启事务
+     */
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    /**
+     * 是否使用“Redis判断资格 + 异步下单”的秒杀流程，关闭后退回到数据库加锁下单
+     */
+    @Value("${hmdp.seckill.async:true}")
+    private boolean asyncSeckill;
+
+    /**
+     * 消费者组中当前节点的消费者名称，默认为 主机名-进程号，同一主机上的多个实例不会共用一个消费者；
+     * 重启后名称变化时，上次未确认的消息由其他节点（或重启后的本节点）认领处理
+     */
+    @Value("${hmdp.seckill.consumer:}")
+    private String consumerName;
+
+    /**
+     * 消息的最大投递次数，pending-list中超过该次数仍处理失败的订单转入死信队列
+     */
+    @Value("${hmdp.seckill.max-deliveries:5}")
+    private int maxDeliveries = 5;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 每批最多写入数据库的订单数
+     */
+    private static final int ORDER_BATCH_SIZE = 100;
+
+    /**
+     * pending-list中的消息超过该时长未确认，认为其消费者已宕机，由当前节点认领
+     */
+    private static final Duration PENDING_CLAIM_IDLE = Duration.ofMinutes(1);
+
+    /**
+     * 处理pending-list失败后重试的最长间隔
+     */
+    private static final long PENDING_RETRY_MAX_MILLIS = 2000;
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT = RedisScripts.load("seckill.lua", Long.class);
+    private static final DefaultRedisScript<Long> SECKILL_RESERVE_SCRIPT = RedisScripts.load("seckill_reserve.lua", Long.class);
+
+    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * 是否认领了其他消费者的消息，认领后由消费线程处理pending-list
+     */
+    private final AtomicBoolean pendingClaimed = new AtomicBoolean(false);
+
+    private Counter persistedCounter;
+    private Counter recoveredCounter;
+    private Counter deadLetterCounter;
+    private Timer batchTimer;
+
+    @PostConstruct
+    private void init() {
+        if (!asyncSeckill) {
+            return;
+        }
+        if (StrUtil.isBlank(consumerName)) {
+            consumerName = NetUtil.getLocalHostName() + "-" + RuntimeUtil.getPid();
+        }
+        //创建消费者组，消息队列不存在时一并创建
+        try {
+            stringRedisTemplate.opsForStream().createGroup(SECKILL_ORDER_STREAM, ReadOffset.from("0"), SECKILL_ORDER_GROUP);
+        } catch (Exception e) {
+            //BUSYGROUP：消费者组已存在
+            log.debug("消费者组{}已存在", SECKILL_ORDER_GROUP);
+        }
+        //消费延迟（队列中未处理完的消息数）与吞吐量指标
+        Gauge.builder("seckill.order.stream.lag", this, VoucherOrderServiceImpl::streamLag)
+                .description("订单消息队列中尚未确认的消息数")
+                .register(meterRegistry);
+        Gauge.builder("seckill.order.stream.pending", this, VoucherOrderServiceImpl::streamPending)
+                .description("已投递给消费者但尚未确认的消息数")
+                .register(meterRegistry);
+        persistedCounter = meterRegistry.counter("seckill.order.persisted");
+        recoveredCounter = meterRegistry.counter("seckill.order.recovered");
+        deadLetterCounter = meterRegistry.counter("seckill.order.dead-letter");
+        batchTimer = meterRegistry.timer("seckill.order.batch");
+        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        SECKILL_ORDER_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * 从消息队列中批量读取订单并写入数据库
+     */
+    private class VoucherOrderHandler implements Runnable {
+        @Override
+        public void run() {
+            //启动时先处理上次宕机前已读取但未确认的消息
+            handlePendingList();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    if (pendingClaimed.compareAndSet(true, false)) {
+                        handlePendingList();
+                    }
+                    //1、获取消息队列中的订单 XREADGROUP GROUP order-group c1 COUNT 100 BLOCK 2000 STREAMS stream.orders >
+                    @SuppressWarnings("unchecked")
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                            StreamReadOptions.empty().count(ORDER_BATCH_SIZE).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.lastConsumed())
+                    );
+                    //2、没有消息，继续下一次循环
+                    if (list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    //3、创建订单并确认消息
+                    handleVoucherOrders(list);
+                } catch (Exception e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    log.error("处理订单异常", e);
+                    handlePendingList();
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理pending-list中已读取但未确认的订单。
+     * 整批失败时逐条重试，仍然失败的订单留在pending-list中，超过最大投递次数后转入死信队列，避免一条坏消息无限重试
+     */
+    private void handlePendingList() {
+        long retryMillis = 20;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<MapRecord<String, Object, Object>> list = null;
+            try {
+                //1、获取pending-list中的订单 XREADGROUP GROUP order-group c1 COUNT 100 STREAMS stream.orders 0
+                @SuppressWarnings("unchecked")
+                List<MapRecord<String, Object, Object>> read = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                        StreamReadOptions.empty().count(ORDER_BATCH_SIZE),
+                        StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.from("0"))
+                );
+                list = read;
+                //2、pending-list中没有消息，结束
+                if (list == null || list.isEmpty()) {
+                    break;
+                }
+                recoveredCounter.increment(list.size());
+                //3、创建订单并确认消息
+                handleVoucherOrders(list);
+                retryMillis = 20;
+                continue;
+            } catch (Exception e) {
+                if (list == null) {
+                    log.error("读取pending-list订单异常", e);
+                } else {
+                    log.warn("处理pending-list订单异常，逐条重试：{}条", list.size(), e);
+                }
+            }
+            //4、整批失败，逐条处理，失败的留在pending-list中；超过最大投递次数的转入死信队列
+            int failed = list == null ? 0 : handleVoucherOrdersOneByOne(list);
+            if (failed == 0 && list != null) {
+                continue;
+            }
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            retryMillis = Math.min(retryMillis * 2, PENDING_RETRY_MAX_MILLIS);
+        }
+    }
+
+    /**
+     * 逐条处理订单，投递次数已达上限且仍然失败的订单转入死信队列
+     *
+     * @return 仍留在pending-list中的订单数
+     */
+    private int handleVoucherOrdersOneByOne(List<MapRecord<String, Object, Object>> records) {
+        Map<RecordId, Long> deliveries = deliveryCounts(records);
+        int failed = 0;
+        for (MapRecord<String, Object, Object> record : records) {
+            try {
+                handleVoucherOrders(Collections.singletonList(record));
+            } catch (Exception e) {
+                long delivered = deliveries.getOrDefault(record.getId(), 0L);
+                if (delivered >= maxDeliveries) {
+                    log.error("订单投递{}次仍处理失败，转入死信队列：{}", delivered, record.getId(), e);
+                    if (!deadLetter(record)) {
+                        failed++;
+                    }
+                } else {
+                    log.debug("订单处理失败，稍后重试：{}", record.getId(), e);
+                    failed++;
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 查询消息的投递次数 XPENDING stream.orders order-group - + count consumer
+     */
+    private Map<RecordId, Long> deliveryCounts(List<MapRecord<String, Object, Object>> records) {
+        Map<RecordId, Long> deliveries = new HashMap<>(records.size() * 2);
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(SECKILL_ORDER_STREAM,
+                    Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                    Range.closed(records.get(0).getId().getValue(), records.get(records.size() - 1).getId().getValue()),
+                    records.size());
+            for (PendingMessage message : pending) {
+                deliveries.put(message.getId(), message.getTotalDeliveryCount());
+            }
+        } catch (Exception e) {
+            log.warn("查询订单投递次数失败", e);
+        }
+        return deliveries;
+    }
+
+    /**
+     * 把处理失败的订单写入死信队列，再从订单队列中确认并删除
+     */
+    private boolean deadLetter(MapRecord<String, Object, Object> record) {
+        try {
+            Map<Object, Object> body = new HashMap<>(record.getValue());
+            body.put("sourceId", record.getId().getValue());
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_LETTER_STREAM, body);
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, record.getId());
+            stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM, record.getId());
+            deadLetterCounter.increment();
+            return true;
+        } catch (Exception e) {
+            log.error("订单转入死信队列失败：{}", record.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 认领其他消费者长时间未确认的消息（消费者所在节点宕机后不再重启），交给当前节点处理
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void claimIdlePendingOrders() {
+        if (!asyncSeckill) {
+            return;
+        }
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, Range.unbounded(), ORDER_BATCH_SIZE);
+            List<RecordId> ids = pending.stream()
+                    .filter(p -> !consumerName.equals(p.getConsumerName()))
+                    .filter(p -> p.getElapsedTimeSinceLastDelivery().compareTo(PENDING_CLAIM_IDLE) >= 0)
+                    .map(PendingMessage::getId)
+                    .collect(Collectors.toList());
+            if (ids.isEmpty()) {
+                return;
+            }
+            //XCLAIM后消息进入当前消费者的pending-list，由消费线程处理
+            List<RecordId> claimed = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                    connection.streamCommands().xClaimJustId(
+                            SECKILL_ORDER_STREAM.getBytes(StandardCharsets.UTF_8),
+                            SECKILL_ORDER_GROUP,
+                            consumerName,
+                            RedisStreamCommands.XClaimOptions.minIdle(PENDING_CLAIM_IDLE).ids(ids)));
+            if (claimed != null && !claimed.isEmpty()) {
+                log.warn("认领了{}条其他消费者未确认的订单", claimed.size());
+                pendingClaimed.set(true);
+            }
+        } catch (Exception e) {
+            log.error("认领pending-list订单异常", e);
+        }
+    }
+
+    /**
+     * 把消息转换成订单批量写入数据库，成功后确认并删除消息
+     *
+     * @param records
+     */
+    private void handleVoucherOrders(List<MapRecord<String, Object, Object>> records) {
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+        }
+        batchTimer.record(() -> voucherOrderService.createVoucherOrders(orders));
+        persistedCounter.increment(orders.size());
+        //确认消息 XACK，并删除已处理的消息，使队列长度即为消费延迟
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, ids);
+        stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM, ids);
+    }
+
+    private double streamLag() {
+        Long size = stringRedisTemplate.opsForStream().size(SECKILL_ORDER_STREAM);
+        return size == null ? 0 : size;
+    }
+
+    private double streamPending() {
+        PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP);
+        return summary == null ? 0 : summary.getTotalPendingMessages();
+    }
 
     /**
      * 秒杀券下单
@@ -46,6 +384,147 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      */
     @Override
     public Result seckillVoucher(Long voucherId) {
+        if (!asyncSeckill) {
+            return seckillVoucherWithLock(voucherId);
+        }
+        //1、本地已标记售罄，直接返回
+        if (seckillSoldOutCache.isSoldOut(voucherId)) {
+            return Result.fail("已经抢光啦！");
+        }
+        //2、执行lua脚本，判断秒杀时间、库存和一人一单，扣减redis中的库存并把订单发送到消息队列
+        Long userId = UserHolder.getUser().getId();
+        long orderId = redisIdWorker.nextId("order");
+        int r = executeSeckill(voucherId, userId, orderId);
+        if (r == 5) {
+            //3、秒杀券未预热（如redis数据丢失），从数据库加载后重试一次；
+            //预热会按数据库中的分段数重建库存并刷新本节点的分段数，重试时与其他节点使用相同的分段方式
+            SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+            if (voucher == null) {
+                return Result.fail("优惠券不存在！");
+            }
+            seckillVoucherService.warmUp(voucher);
+            r = executeSeckill(voucherId, userId, orderId);
+        }
+        //4、结果不为0，没有购买资格
+        switch (r) {
+            case 0:
+                break;
+            case 2:
+                return Result.fail("一人只能下一单哦！");
+            case 3:
+                return Result.fail("秒杀尚未开始！");
+            case 4:
+                return Result.fail("秒杀已经结束！");
+            case 5:
+                return Result.fail("优惠券不存在！");
+            default:
+                //售罄消息在库存扣减到0时已经发布过，这里只标记本地
+                seckillSoldOutCache.markSoldOut(voucherId);
+                return Result.fail("已经抢光啦！");
+        }
+        //5、有购买资格，订单由后台线程从消息队列中取出写入数据库，这里直接返回订单id
+        return Result.ok(orderId);
+    }
+
+    /**
+     * 按秒杀券的库存分段数选择分段扣减或单个库存key扣减
+     *
+     * @return 与 {@link #executeSeckillScript} 相同
+     */
+    private int executeSeckill(Long voucherId, Long userId, long orderId) {
+        int buckets = seckillVoucherService.getStockBuckets(voucherId);
+        return buckets > 1
+                ? seckillWithStockBuckets(voucherId, userId, orderId, buckets)
+                : executeSeckillScript(voucherId, userId, orderId);
+    }
+
+    /**
+     * 执行秒杀lua脚本
+     *
+     * @return 0 下单成功；1 库存不足；2 用户已下单；3 秒杀尚未开始；4 秒杀已经结束；5 秒杀券未预热
+     */
+    private int executeSeckillScript(Long voucherId, Long userId, long orderId) {
+        Long result = stringRedisTemplate.execute(
+                SECKILL_SCRIPT,
+                Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, SECKILL_ORDER_STREAM, SECKILL_VOUCHER_KEY + voucherId),
+                userId.toString(), voucherId.toString(), String.valueOf(orderId), String.valueOf(System.currentTimeMillis()),
+                SECKILL_SOLD_OUT_CHANNEL
+        );
+        return result == null ? 1 : result.intValue();
+    }
+
+    /**
+     * 分段库存的秒杀：先判断秒杀时间并预占一人一单的资格，再从随机选中的分段扣减库存，
+     * 该分段库存不足时依次尝试其他分段，全部不足则释放预占的资格
+     *
+     * @return 与 {@link #executeSeckillScript} 相同
+     */
+    private int seckillWithStockBuckets(Long voucherId, Long userId, long orderId, int buckets) {
+        //1、判断秒杀时间和一人一单，并预占下单资格
+        Long result = stringRedisTemplate.execute(
+                SECKILL_RESERVE_SCRIPT,
+                Arrays.asList(SECKILL_ORDER_KEY + voucherId, SECKILL_VOUCHER_KEY + voucherId),
+                userId.toString(), String.valueOf(System.currentTimeMillis())
+        );
+        int r = result == null ? 1 : result.intValue();
+        if (r != 0) {
+            return r;
+        }
+        try {
+            //2、从随机的分段开始扣减库存；都不足但总库存仍有剩余时（对账正在分段之间移动库存），再尝试一轮
+            int bucket = takeAnyBucket(voucherId, buckets);
+            if (bucket < 0 && seckillVoucherService.getTotalBucketStock(voucherId, buckets) > 0) {
+                bucket = takeAnyBucket(voucherId, buckets);
+            }
+            if (bucket >= 0) {
+                //3、扣减成功，把订单发送到消息队列，发送失败则归还库存
+                try {
+                    Map<String, String> order = new HashMap<>(4);
+                    order.put("userId", userId.toString());
+                    order.put("voucherId", voucherId.toString());
+                    order.put("id", String.valueOf(orderId));
+                    stringRedisTemplate.opsForStream().add(SECKILL_ORDER_STREAM, order);
+                } catch (RuntimeException e) {
+                    seckillVoucherService.returnBucketStock(voucherId, bucket, 1);
+                    throw e;
+                }
+                return 0;
+            }
+        } catch (RuntimeException e) {
+            stringRedisTemplate.opsForSet().remove(SECKILL_ORDER_KEY + voucherId, userId.toString());
+            throw e;
+        }
+        //4、所有分段库存都不足，释放预占的下单资格；确认总库存为0后才通知各节点已售罄
+        stringRedisTemplate.opsForSet().remove(SECKILL_ORDER_KEY + voucherId, userId.toString());
+        if (seckillVoucherService.getTotalBucketStock(voucherId, buckets) <= 0) {
+            seckillSoldOutCache.publishSoldOut(voucherId);
+        }
+        return 1;
+    }
+
+    /**
+     * 从随机的分段开始依次尝试扣减一个库存
+     *
+     * @return 扣减成功的分段序号，所有分段库存都不足时返回-1
+     */
+    private int takeAnyBucket(Long voucherId, int buckets) {
+        int start = ThreadLocalRandom.current().nextInt(buckets);
+        for (int i = 0; i < buckets; i++) {
+            int bucket = (start + i) % buckets;
+            if (seckillVoucherService.takeBucketStock(voucherId, bucket, 1)) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 秒杀券下单：查询数据库判断库存，加分布式锁后在数据库中扣减库存、创建订单
+     *
+     * @param voucherId
+     * @return
+     */
+    private Result seckillVoucherWithLock(Long voucherId) {
         //1、查询优惠券
         SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
         //2、判断秒杀是否开始
@@ -64,10 +543,10 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
 
         Long userId = UserHolder.getUser().getId();
-        //创建分布式锁对象
-        SimpleRedisLock lock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
-        //获取锁，并判断获取锁是否成功
-        boolean isLock = lock.tryLock(1200);
+        //创建锁对象，同一用户在本节点的并发请求先在本地锁排队，只有一个去redis竞争分布式锁
+        ILock lock = redisLocks.getStripedLock("order:" + userId);
+        //获取锁，并判断获取锁是否成功；持有期间由看门狗续期，不需要估计事务的耗时
+        boolean isLock = lock.tryLock();
         if (!isLock) {
             //获取锁失败
             return Result.fail("一人只能下一单哦！");
@@ -133,4 +612,55 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         return Result.ok(orderId);
     }
 
+    /**
+     * 批量创建订单，一人一单已由redis中的lua脚本保证
+     * 消息可能被重复投递（宕机后重新处理pending-list），已存在的订单会被跳过
+     *
+     * @param voucherOrders
+     */
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        //1、过滤掉已经写入数据库的订单
+        Set<Long> existIds = listByIds(voucherOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList()))
+                .stream()
+                .map(VoucherOrder::getId)
+                .collect(Collectors.toSet());
+        List<VoucherOrder> orders = new ArrayList<>(voucherOrders.size());
+        //2、按优惠券分组，同一张优惠券只扣减一次库存
+        Map<Long, List<VoucherOrder>> ordersOfVoucher = voucherOrders.stream()
+                .filter(order -> !existIds.contains(order.getId()))
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId));
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersOfVoucher.entrySet()) {
+            Long voucherId = entry.getKey();
+            int count = entry.getValue().size();
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", voucherId)
+                    .ge("stock", count)
+                    .update();
+            if (success) {
+                orders.addAll(entry.getValue());
+                continue;
+            }
+            //3、数据库库存不足以扣减整批，逐个扣减，扣减失败的订单不再创建
+            for (VoucherOrder order : entry.getValue()) {
+                success = seckillVoucherService.update()
+                        .setSql("stock = stock - 1")
+                        .eq("voucher_id", voucherId)
+                        .gt("stock", 0)
+                        .update();
+                if (!success) {
+                    log.error("库存不足，订单{}创建失败", order.getId());
+                    continue;
+                }
+                orders.add(order);
+            }
+        }
+        //4、多行插入订单
+        if (!orders.isEmpty()) {
+            getBaseMapper().insertBatch(orders);
+        }
+    }
+
 }
@@ -0,0 +1,215 @@
+package com.hmdp.utils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Kryo二进制编码
+ * 格式：魔数(1字节) | 版本(1字节) | 标志(1字节) | 逻辑过期时间(8字节，毫秒) | 重建耗时(4字节，毫秒) | 内容
+ * 逻辑过期时间和重建耗时放在固定长度的头部，判断是否过期只读头部，内容在需要返回时才反序列化
+ * 内容超过压缩阈值时使用deflate压缩（如图片地址很长的店铺），标志的最低位表示是否压缩
+ * 实体类使用兼容字段序列化，增删字段后旧数据仍可读取
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    /**
+     * 魔数，JSON以ASCII字符开头，不会与之冲突
+     */
+    static final byte MAGIC = (byte) 0xC5;
+
+    static final byte VERSION = 2;
+
+    /**
+     * 魔数、版本、标志的长度
+     */
+    static final int PREFIX_LENGTH = 3;
+
+    static final byte FLAG_COMPRESSED = 1;
+
+    /**
+     * 头部长度，只判断是否过期时用 GETRANGE 读取这么多字节即可
+     */
+    public static final int HEADER_LENGTH = 15;
+
+    /**
+     * 默认的压缩阈值（字节）
+     */
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 512;
+
+    public static final BinaryCacheCodec DEFAULT = new BinaryCacheCodec(DEFAULT_COMPRESS_THRESHOLD);
+
+    private static final Pool<Kryo> KRYO_POOL = new Pool<Kryo>(true, false, 64) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            kryo.setReferences(false);
+            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            kryo.setDefaultSerializer(CompatibleFieldSerializer.class);
+            //注册常用类，只写入编号而不是类名；编号一经使用不能修改
+            kryo.register(RedisData.class, 100);
+            kryo.register(LocalDateTime.class, 101);
+            kryo.register(ArrayList.class, 102);
+            kryo.register(Shop.class, 110);
+            kryo.register(ShopType.class, 111);
+            kryo.register(UserDTO.class, 112);
+            kryo.register(Blog.class, 113);
+            kryo.register(ShopType[].class, 114);
+            return kryo;
+        }
+    };
+
+    private final int compressThreshold;
+
+    /**
+     * @param compressThreshold 内容超过该字节数时压缩，小于等于0表示不压缩
+     */
+    public BinaryCacheCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    static boolean isBinary(byte[] bytes) {
+        return bytes.length >= PREFIX_LENGTH && bytes[0] == MAGIC;
+    }
+
+    /**
+     * 只根据头部读取逻辑过期时间
+     *
+     * @param header 缓存值的前 {@link #HEADER_LENGTH} 个字节
+     * @return 不是当前版本的二进制编码时返回null
+     */
+    public static Long readExpireAt(byte[] header) {
+        if (header == null || header.length < HEADER_LENGTH || header[0] != MAGIC || header[1] != VERSION) {
+            return null;
+        }
+        return ByteBuffer.wrap(header, PREFIX_LENGTH, 8).getLong();
+    }
+
+    @Override
+    public byte[] encode(RedisData redisData) {
+        byte[] body = serialize(redisData.getData());
+        byte flags = 0;
+        if (compressThreshold > 0 && body.length > compressThreshold) {
+            byte[] compressed = deflate(body);
+            if (compressed.length < body.length) {
+                body = compressed;
+                flags |= FLAG_COMPRESSED;
+            }
+        }
+        Long delta = redisData.getDelta();
+        byte[] bytes = new byte[HEADER_LENGTH + body.length];
+        ByteBuffer.wrap(bytes)
+                .put(MAGIC)
+                .put(VERSION)
+                .put(flags)
+                .putLong(CacheEntry.toEpochMilli(redisData.getExpireTime()))
+                .putInt(delta == null ? (int) CacheEntry.NONE : (int) Math.min(delta, Integer.MAX_VALUE))
+                .put(body);
+        return bytes;
+    }
+
+    @Override
+    public CacheEntry read(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            //引入二进制编码之前写入的JSON
+            return JsonCacheCodec.INSTANCE.read(bytes);
+        }
+        if (bytes[1] != VERSION || bytes.length < HEADER_LENGTH) {
+            throw new IllegalStateException("不支持的缓存编码版本：" + bytes[1]);
+        }
+        ByteBuffer header = ByteBuffer.wrap(bytes, PREFIX_LENGTH, HEADER_LENGTH - PREFIX_LENGTH);
+        return new BinaryEntry(header.getLong(), header.getInt(), bytes);
+    }
+
+    private static class BinaryEntry extends CacheEntry {
+
+        private final byte[] bytes;
+
+        BinaryEntry(long expireAt, long delta, byte[] bytes) {
+            super(expireAt, delta);
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected Object decodeData(Class<?> type) {
+            return deserialize(bytes, HEADER_LENGTH, (bytes[2] & FLAG_COMPRESSED) != 0, type);
+        }
+    }
+
+    private static byte[] serialize(Object data) {
+        Kryo kryo = KRYO_POOL.obtain();
+        try {
+            Output output = new Output(256, -1);
+            kryo.writeObjectOrNull(output, data, data == null ? Object.class : data.getClass());
+            return output.toBytes();
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+    }
+
+    private static <T> T deserialize(byte[] bytes, int offset, boolean compressed, Class<T> type) {
+        Input input = compressed
+                ? new Input(inflate(bytes, offset))
+                : new Input(bytes, offset, bytes.length - offset);
+        Kryo kryo = KRYO_POOL.obtain();
+        try {
+            return kryo.readObjectOrNull(input, type);
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((bytes.length - offset) * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("缓存数据不完整");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("缓存数据解压失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
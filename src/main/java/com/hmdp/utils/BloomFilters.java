@@ -0,0 +1,110 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 店铺、博客、用户id的布隆过滤器，防止查询不存在的id造成缓存穿透
+ * 新增数据的通知通过redis发布订阅同步到各节点，并定时与redis位图对账
+ */
+@Slf4j
+@Component
+public class BloomFilters implements MessageListener {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 每个过滤器预计的数据量
+     */
+    @Value("${hmdp.bloom.expected-insertions:1000000}")
+    private long expectedInsertions = 1000000;
+
+    /**
+     * 误判率
+     */
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp = 0.01;
+
+    private final Map<String, RedisBloomFilter> filters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        for (String name : new String[]{BLOOM_SHOP, BLOOM_BLOG, BLOOM_USER}) {
+            filters.put(name, new RedisBloomFilter(name, stringRedisTemplate, expectedInsertions, fpp));
+        }
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(BLOOM_ADD_CHANNEL));
+    }
+
+    public RedisBloomFilter shop() {
+        return filters.get(BLOOM_SHOP);
+    }
+
+    public RedisBloomFilter blog() {
+        return filters.get(BLOOM_BLOG);
+    }
+
+    public RedisBloomFilter user() {
+        return filters.get(BLOOM_USER);
+    }
+
+    /**
+     * 根据名称获取过滤器
+     *
+     * @param name shop、blog、user
+     * @return 不存在时返回null
+     */
+    public RedisBloomFilter get(String name) {
+        return filters.get(name);
+    }
+
+    public Collection<RedisBloomFilter> all() {
+        return filters.values();
+    }
+
+    /**
+     * 消息格式：过滤器名称:id
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int i = body.indexOf(':');
+        RedisBloomFilter filter = i < 0 ? null : filters.get(body.substring(0, i));
+        if (filter != null) {
+            filter.addLocal(body.substring(i + 1));
+        }
+    }
+
+    /**
+     * 定时把redis位图合并到本地，弥补断线期间漏掉的通知
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void sync() {
+        for (RedisBloomFilter filter : filters.values()) {
+            try {
+                filter.sync();
+            } catch (Exception e) {
+                log.error("同步布隆过滤器{}失败", filter.getName(), e);
+            }
+        }
+    }
+}
@@ -1,24 +1,39 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
-import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+/**
+ * 一个缓存区域的客户端，每个区域只创建一次，见 {@link com.hmdp.config.CacheConfig}
+ */
 @Slf4j
-@Configuration
 public class CacheClient {
 
+    //缓存区域的名称，用作监控指标的标签，默认为缓存的前缀
+    private String name;
+
     //缓存的前缀
     private String cacheKeyPrefix;
     //缓存的TTL
@@ -41,12 +56,55 @@ public class CacheClient {
     //缓存击穿返回空值的TTL的时间单位
     private TimeUnit cacheMissingTTLTimeUnit;
 
+    //本地缓存（一级缓存），为空时只使用redis
+    private Cache<String, Object> localCache;
 
-    @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    //热点key探测，探测到的热点key在本地缓存一小段时间，为空时不探测
+    private HotKeyDetector hotKeyDetector;
+    private Cache<String, Object> hotCache;
 
-    public CacheClient() {
-    }
+    //本地缓存的失效通知总线，为空时只清除本节点的本地缓存
+    private CacheInvalidationBus invalidationBus;
+
+    //命中率、耗时、互斥锁竞争等监控指标，未设置MeterRegistry时只在本对象内统计
+    private CacheMetrics metrics;
+
+    //提前刷新的系数，越大越早刷新，0表示不提前刷新
+    private double earlyRefreshBeta;
+
+    //布隆过滤器，为空时不拦截
+    private RedisBloomFilter bloomFilter;
+
+    //合并本节点对同一个key的并发加载
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+
+    //获取互斥锁失败后的最大重试次数和重试间隔
+    private static final int MUTEX_MAX_RETRIES = 20;
+    private static final long MUTEX_RETRY_INTERVAL_MILLIS = 50;
+
+    //本地缓存中代表空值的对象
+    private static final Object NULL_VALUE = new Object();
+
+    //互斥锁方式读取redis时代表未命中的对象
+    private static final Object MISSING = new Object();
+
+    //redis中代表空值的内容
+    private static final byte[] NULL_BYTES = new byte[0];
+
+    //缓存值的编解码方式，默认与之前一样使用JSON
+    private CacheCodec codec = JsonCacheCodec.INSTANCE;
+
+    //按字节读写缓存值的模板，由编解码负责序列化
+    private volatile RedisTemplate<String, byte[]> bytesRedisTemplate;
+
+    //未指定线程池时使用的公共重建线程池，有界队列，队列满时本次不重建
+    private static final ExecutorService DEFAULT_REBUILD_EXECUTOR = new ThreadPoolExecutor(
+            10, 10, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1000));
+
+    //逻辑过期后在后台重建缓存的线程池
+    private ExecutorService rebuildExecutor = DEFAULT_REBUILD_EXECUTOR;
+
+    private final StringRedisTemplate stringRedisTemplate;
 
     public CacheClient(
             StringRedisTemplate stringRedisTemplate,
@@ -70,8 +128,299 @@ public class CacheClient {
         this.cacheLogicExpireTTLTimeUnit = cacheLogicExpireTTLTimeUnit;
         this.cacheMissingTTL = cacheMissingTTL;
         this.cacheMissingTTLTimeUnit = cacheMissingTTLTimeUnit;
+        this.name = cacheKeyPrefix;
+        this.metrics = new CacheMetrics(cacheKeyPrefix, new SimpleMeterRegistry());
     }
 
+    /**
+     * 设置缓存区域的名称，需在 {@link #withMeterRegistry} 之前调用
+     *
+     * @param name
+     * @return
+     */
+    public CacheClient withName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * 设置后台重建缓存的线程池，线程池由调用方负责关闭
+     *
+     * @param rebuildExecutor
+     * @return
+     */
+    public CacheClient withRebuildExecutor(ExecutorService rebuildExecutor) {
+        this.rebuildExecutor = rebuildExecutor;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    public String getKeyPrefix() {
+        return cacheKeyPrefix;
+    }
+
+    /**
+     * 本地缓存的条数（估算值）
+     *
+     * @return 未开启本地缓存时返回-1
+     */
+    public long localCacheSize() {
+        return localCache == null ? -1 : localCache.estimatedSize();
+    }
+
+
+    /**
+     * 开启本地缓存，热点数据直接从本地读取，不访问redis、不反序列化
+     *
+     * @param maximumSize 最多缓存的条数
+     * @param ttl         写入后的过期时间，即其他节点修改数据后本节点最多读到旧值的时长
+     * @param unit
+     * @return
+     */
+    public CacheClient withLocalCache(long maximumSize, long ttl, TimeUnit unit) {
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, unit)
+                .build();
+        return this;
+    }
+
+    /**
+     * 开启热点key探测：访问redis的key都计入探测器，成为热点的key在本地缓存一小段时间，不再访问redis
+     *
+     * @param detector
+     * @param maximumSize 本地缓存的热点key个数上限
+     * @param ttl         热点key在本地缓存的时间，应远小于普通的本地缓存
+     * @param unit
+     * @return
+     */
+    public CacheClient withHotKeyDetection(HotKeyDetector detector, long maximumSize, long ttl, TimeUnit unit) {
+        this.hotKeyDetector = detector;
+        this.hotCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, unit)
+                .build();
+        return this;
+    }
+
+    /**
+     * 设置缓存值的编解码方式，读取时兼容另一种编码写入的值
+     *
+     * @param codec
+     * @return
+     */
+    public CacheClient withCodec(CacheCodec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * 把监控指标注册到MeterRegistry，指标见 {@link CacheMetrics}，需在 {@link #withLocalCache} 之后调用
+     *
+     * @param meterRegistry
+     * @return
+     */
+    public CacheClient withMeterRegistry(MeterRegistry meterRegistry) {
+        this.metrics = new CacheMetrics(this.name, meterRegistry);
+        if (localCache != null) {
+            Cache<String, Object> cache = localCache;
+            Gauge.builder("cache.local.size", cache, Cache::estimatedSize)
+                    .tag("cache", this.name)
+                    .description("本地缓存的条数")
+                    .register(meterRegistry);
+        }
+        return this;
+    }
+
+    /**
+     * 开启逻辑过期的提前刷新（XFetch）
+     * 每次读取时以一定概率提前触发后台重建，重建耗时越长、离过期越近，概率越大，
+     * 同时加载的一批key的重建时间因此被随机打散，不会在同一时刻集中过期
+     *
+     * @param beta 系数，1为推荐值，大于1更早刷新
+     * @return
+     */
+    public CacheClient withEarlyRefresh(double beta) {
+        this.earlyRefreshBeta = beta;
+        return this;
+    }
+
+    /**
+     * 使用布隆过滤器拦截一定不存在的id，不访问redis和数据库
+     *
+     * @param bloomFilter
+     * @return
+     */
+    public CacheClient withBloomFilter(RedisBloomFilter bloomFilter) {
+        this.bloomFilter = bloomFilter;
+        return this;
+    }
+
+    /**
+     * 订阅缓存失效通知，其他节点删除缓存时同步清除本地缓存
+     *
+     * @param bus
+     * @return
+     */
+    public CacheClient listenInvalidation(CacheInvalidationBus bus) {
+        this.invalidationBus = bus;
+        bus.subscribe(this.cacheKeyPrefix, new CacheInvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                invalidateLocal(key);
+            }
+
+            @Override
+            public void invalidatePrefix(String prefix) {
+                for (Cache<String, Object> cache : localCaches()) {
+                    cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+                }
+            }
+
+            @Override
+            public void invalidateAll() {
+                for (Cache<String, Object> cache : localCaches()) {
+                    cache.invalidateAll();
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * 删除缓存，并通知所有节点清除本地缓存
+     *
+     * @param id
+     * @param <ID>
+     */
+    public <ID> void delete(ID id) {
+        String key = this.cacheKeyPrefix + id;
+        stringRedisTemplate.delete(key);
+        if (invalidationBus != null) {
+            invalidationBus.publish(key);
+        } else {
+            invalidateLocal(key);
+        }
+    }
+
+    private void invalidateLocal(String key) {
+        for (Cache<String, Object> cache : localCaches()) {
+            cache.invalidate(key);
+        }
+    }
+
+    private List<Cache<String, Object>> localCaches() {
+        List<Cache<String, Object>> caches = new ArrayList<>(2);
+        if (localCache != null) {
+            caches.add(localCache);
+        }
+        if (hotCache != null) {
+            caches.add(hotCache);
+        }
+        return caches;
+    }
+
+    /**
+     * 从本地缓存读取，未命中时计入热点key探测（接下来会访问redis）
+     *
+     * @return 未开启本地缓存或未命中时返回null，命中空值时返回NULL_VALUE
+     */
+    private Object getLocal(String key) {
+        Object value = localCache == null ? null : localCache.getIfPresent(key);
+        if (value == null && hotCache != null) {
+            value = hotCache.getIfPresent(key);
+        }
+        if (value == null && hotKeyDetector != null) {
+            hotKeyDetector.record(key);
+        }
+        return value;
+    }
+
+    /**
+     * 写入本地缓存，热点key同时写入热点缓存
+     */
+    private void putLocal(String key, Object value) {
+        Object local = value == null ? NULL_VALUE : value;
+        if (localCache != null) {
+            localCache.put(key, local);
+        }
+        if (hotCache != null && hotKeyDetector.isHot(key)) {
+            hotCache.put(key, local);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unwrapLocal(Object value) {
+        return value == NULL_VALUE ? null : (T) value;
+    }
+
+    private RedisTemplate<String, byte[]> bytesRedisTemplate() {
+        RedisTemplate<String, byte[]> template = bytesRedisTemplate;
+        if (template == null) {
+            template = new RedisTemplate<>();
+            template.setConnectionFactory(stringRedisTemplate.getConnectionFactory());
+            template.setKeySerializer(RedisSerializer.string());
+            template.setValueSerializer(RedisSerializer.byteArray());
+            template.afterPropertiesSet();
+            bytesRedisTemplate = template;
+        }
+        return template;
+    }
+
+    private byte[] getRaw(String key) {
+        return bytesRedisTemplate().opsForValue().get(key);
+    }
+
+    /**
+     * 编码后写入redis
+     *
+     * @param key
+     * @param redisData
+     * @param time      redis中的TTL，为null时不过期
+     * @param unit
+     */
+    private void write(String key, RedisData redisData, Long time, TimeUnit unit) {
+        byte[] value = codec.encode(redisData);
+        metrics.payload(value.length);
+        if (time == null) {
+            bytesRedisTemplate().opsForValue().set(key, value);
+        } else {
+            bytesRedisTemplate().opsForValue().set(key, value, time, unit);
+        }
+    }
+
+    /**
+     * 缓存空值，解决缓存穿透
+     *
+     * @param key
+     */
+    private void writeNull(String key) {
+        bytesRedisTemplate().opsForValue().set(key, NULL_BYTES, this.cacheMissingTTL, this.cacheMissingTTLTimeUnit);
+    }
+
+    private static boolean isNullValue(byte[] raw) {
+        for (byte b : raw) {
+            if (!Character.isWhitespace(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static RedisData newRedisData(Object value, LocalDateTime expireTime, Long delta) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        redisData.setDelta(delta);
+        return redisData;
+    }
 
     /**
      * 添加缓存，TTL过期
@@ -82,7 +431,7 @@ public class CacheClient {
      * @param unit
      */
     public void setWithTTL(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        write(key, newRedisData(value, null, null), time, unit);
     }
 
     /**
@@ -94,10 +443,7 @@ public class CacheClient {
      * @param unit
      */
     public void setWithLogicExpire(String key, Object value, Long time, TimeUnit unit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData), time, unit);
+        write(key, newRedisData(value, LocalDateTime.now().plusSeconds(unit.toSeconds(time)), null), time, unit);
     }
 
 
@@ -116,10 +462,7 @@ public class CacheClient {
     public <T, ID> T setWithLogicExpire(String key, ID id, Class<T> type, Function<ID, T> dbFallback, Long expireMinutes) {
         T t = this.queryWithMutex(id, type, dbFallback);
 //        T t = dbFallback.apply(id);
-        RedisData redisData = new RedisData();
-        redisData.setData(t);
-        redisData.setExpireTime(LocalDateTime.now().plusMinutes(expireMinutes));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        write(key, newRedisData(t, LocalDateTime.now().plusMinutes(expireMinutes), null), null, null);
         return t;
     }
 
@@ -132,15 +475,13 @@ public class CacheClient {
      * @param <T>
      */
     public <T> void setWithLogicExpire(String key, T t, Long expireMinutes) {
-        RedisData redisData = new RedisData();
-        redisData.setData(t);
-        redisData.setExpireTime(LocalDateTime.now().plusMinutes(expireMinutes));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        write(key, newRedisData(t, LocalDateTime.now().plusMinutes(expireMinutes), null), null, null);
     }
 
 
     /**
      * 获取值，避免缓存穿透
+     * 缓存按区域的ttl在redis中过期，逻辑过期的旧值（如由逻辑过期方式写入）视为未命中
      *
      * @param id
      * @param type
@@ -150,42 +491,324 @@ public class CacheClient {
      * @return
      */
     public <T, ID> T queryWithMutex(ID id, Class<T> type, Function<ID, T> dbFallback) {
+        return queryWithMutex(id, type, dbFallback, true);
+    }
+
+    /**
+     * @param expireInRedis true：写入时设置redis的过期时间，读到逻辑过期的值视为未命中；
+     *                      false：供逻辑过期方式首次加载使用，写入时不设置过期时间，由后台重建
+     */
+    @SuppressWarnings("unchecked")
+    private <T, ID> T queryWithMutex(ID id, Class<T> type, Function<ID, T> dbFallback, boolean expireInRedis) {
+        long begin = System.nanoTime();
+        //布隆过滤器判断id一定不存在，直接返回
+        if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+            metrics.get(CacheMetrics.Result.REJECTED, begin);
+            return null;
+        }
         String key = this.cacheKeyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(key);
-        //如果缓存命中且非空（非null、“”、“ ”），就转换成返回对象
-        if (StrUtil.isNotBlank(json)) {
-            return JSONUtil.toBean(json, type);
+        //先查本地缓存
+        Object local = getLocal(key);
+        if (local != null) {
+            metrics.get(local == NULL_VALUE ? CacheMetrics.Result.NULL_HIT : CacheMetrics.Result.LOCAL_HIT, begin);
+            return unwrapLocal(local);
+        }
+        Object cached = readMutexValue(getRaw(key), type, expireInRedis);
+        if (cached != MISSING) {
+            //缓存命中且非空就转换成返回对象；缓存穿透：命中空值返回null
+            T t = (T) cached;
+            putLocal(key, t);
+            metrics.get(t == null ? CacheMetrics.Result.NULL_HIT : CacheMetrics.Result.HIT, begin);
+            return t;
+        }
+        //去数据库查询，查询出来后缓存进redis；本节点同一个key的并发查询只有一个线程去加载，其余线程等待它的结果
+        T t = (T) singleFlight.execute(key, () -> loadWithMutex(key, id, type, dbFallback, expireInRedis));
+        metrics.get(CacheMetrics.Result.MISS, begin);
+        return t;
+    }
+
+    /**
+     * 获取互斥锁后查询数据库并重建缓存；互斥锁被其他节点持有时，等待其重建完成后读取缓存
+     *
+     * @param key
+     * @param id
+     * @param type
+     * @param dbFallback
+     * @param <T>
+     * @param <ID>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private <T, ID> T loadWithMutex(String key, ID id, Class<T> type, Function<ID, T> dbFallback, boolean expireInRedis) {
+        String mutexKey = key + ":mutex";
+        for (int i = 0; i < MUTEX_MAX_RETRIES; i++) {
+            if (tryLock(mutexKey, this.cacheMutexTTL, this.cacheMutexTTLTimeUnit)) {
+                try {
+                    //获取互斥锁成功，再检查一次缓存，可能已被其他节点重建
+                    Object cached = readMutexValue(getRaw(key), type, expireInRedis);
+                    if (cached != MISSING) {
+                        T t = (T) cached;
+                        putLocal(key, t);
+                        return t;
+                    }
+                    //根据id查询对象，若查不到则缓存空值，并返回空值
+                    long begin = System.nanoTime();
+                    T t = dbFallback.apply(id);
+                    long elapsed = System.nanoTime() - begin;
+                    metrics.load(elapsed);
+                    long delta = TimeUnit.NANOSECONDS.toMillis(elapsed);
+                    //解决缓存穿透
+                    if (t == null) {
+                        writeNull(key);
+                        putLocal(key, null);
+                        return null;
+                    }
+                    //若数据库里有，就缓存到redis，并返回数据
+//                    this.setWithTTL(key, t, this.cacheTTL, this.cacheTTLTimeUnit);
+                    if (expireInRedis) {
+                        //逻辑过期时间与redis的过期时间相同，仍记录重建耗时
+                        write(key, newRedisData(t, LocalDateTime.now().plusSeconds(this.cacheTTLTimeUnit.toSeconds(this.cacheTTL)), delta),
+                                this.cacheTTL, this.cacheTTLTimeUnit);
+                    } else {
+                        //与后台重建使用相同的逻辑过期时间
+                        writeLogicExpire(key, t, this.cacheLogicExpireTTLTimeUnit.toSeconds(this.cacheLogicExpireTTL), delta);
+                    }
+                    putLocal(key, t);
+                    return t;
+                } finally {
+                    unLock(mutexKey);
+                }
+            }
+            //获取互斥锁失败，休眠后读取缓存，读到则说明其他节点已重建完成
+            if (i == 0) {
+                metrics.mutexContended();
+            }
+            try {
+                Thread.sleep(MUTEX_RETRY_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            Object cached = readMutexValue(getRaw(key), type, expireInRedis);
+            if (cached != MISSING) {
+                T t = (T) cached;
+                putLocal(key, t);
+                return t;
+            }
+        }
+        //等待超时（持有互斥锁的节点可能已宕机），直接查询数据库，不写缓存
+        log.warn("等待缓存重建超时，直接查询数据库：{}", key);
+        metrics.mutexTimeout();
+        long begin = System.nanoTime();
+        T t = dbFallback.apply(id);
+        metrics.load(System.nanoTime() - begin);
+        return t;
+    }
+
+    /**
+     * 解析互斥锁方式读到的缓存值
+     *
+     * @param raw
+     * @param type
+     * @param expireInRedis 为true时逻辑过期的值视为未命中
+     * @return 空值缓存返回null；未命中返回 {@link #MISSING}
+     */
+    private Object readMutexValue(byte[] raw, Class<?> type, boolean expireInRedis) {
+        if (raw == null) {
+            return MISSING;
         }
-        //缓存穿透：如果缓存命中，判读是否是空值
-        if (json != null) {
+        if (isNullValue(raw)) {
             return null;
         }
-        //去数据库查询，查询出来后缓存进redis
-        T t = null;
-        try {
-            //获取互斥锁，若失败则休眠后再尝试
-            if (!tryLock(key + ":mutex", this.cacheMutexTTL, this.cacheMutexTTLTimeUnit)) {
-                Thread.sleep(50);
-                return queryWithMutex(id, type, dbFallback);
+        CacheEntry entry = codec.read(raw);
+        if (expireInRedis && entry.isExpired(System.currentTimeMillis())) {
+            return MISSING;
+        }
+        return entry.getData(type);
+    }
+
+    /**
+     * 批量查询：一次MGET读取所有key，未命中的id用一次批量查询从数据库加载，再用pipeline写回缓存
+     * 逻辑过期的数据先返回旧值，并在后台逐个重建
+     *
+     * @param ids            需要查询的id
+     * @param type
+     * @param bulkDbFallback 根据一批id查询数据库，返回 id -> 数据，不存在的id不放入结果
+     * @param <T>
+     * @param <ID>
+     * @return 与ids顺序一致的结果，不存在的id对应null
+     */
+    @SuppressWarnings("unchecked")
+    public <T, ID> List<T> queryMany(List<ID> ids, Class<T> type, Function<List<ID>, Map<ID, T>> bulkDbFallback) {
+        long begin = System.nanoTime();
+        List<T> result = new ArrayList<>(Collections.nCopies(ids.size(), null));
+        //1、布隆过滤器和本地缓存
+        List<Integer> remoteIndexes = new ArrayList<>(ids.size());
+        List<String> remoteKeys = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            ID id = ids.get(i);
+            if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+                metrics.get(CacheMetrics.Result.REJECTED);
+                continue;
+            }
+            String key = this.cacheKeyPrefix + id;
+            Object local = getLocal(key);
+            if (local != null) {
+                metrics.get(local == NULL_VALUE ? CacheMetrics.Result.NULL_HIT : CacheMetrics.Result.LOCAL_HIT);
+                result.set(i, unwrapLocal(local));
+                continue;
+            }
+            remoteIndexes.add(i);
+            remoteKeys.add(key);
+        }
+        if (remoteKeys.isEmpty()) {
+            metrics.multiGet(begin);
+            return result;
+        }
+        //2、一次MGET读取redis
+        List<byte[]> values = bytesRedisTemplate().opsForValue().multiGet(remoteKeys);
+        //未命中的id及其在结果中的位置，同一个id可能出现多次
+        Map<ID, List<Integer>> missing = new LinkedHashMap<>();
+        //需要在后台重建的id（逻辑过期或命中提前刷新）
+        Set<ID> stale = new LinkedHashSet<>();
+        for (int j = 0; j < remoteKeys.size(); j++) {
+            int i = remoteIndexes.get(j);
+            String key = remoteKeys.get(j);
+            byte[] raw = values == null ? null : values.get(j);
+            if (raw == null) {
+                metrics.get(CacheMetrics.Result.MISS);
+                missing.computeIfAbsent(ids.get(i), k -> new ArrayList<>(1)).add(i);
+                continue;
+            }
+            if (isNullValue(raw)) {
+                metrics.get(CacheMetrics.Result.NULL_HIT);
+                putLocal(key, null);
+                continue;
+            }
+            CacheEntry entry = codec.read(raw);
+            T t = entry.getData(type);
+            result.set(i, t);
+            if (!entry.isExpired(System.currentTimeMillis())) {
+                metrics.get(CacheMetrics.Result.HIT);
+                if (shouldRefreshEarly(entry)) {
+                    metrics.earlyRefresh();
+                    stale.add(ids.get(i));
+                }
+                putLocal(key, t);
+            } else {
+                //逻辑过期，返回旧数据并在后台重建
+                metrics.get(CacheMetrics.Result.STALE);
+                stale.add(ids.get(i));
+            }
+        }
+        if (!stale.isEmpty()) {
+            //逻辑过期的id一次批量重建
+            rebuildManyAsync(new ArrayList<>(stale), bulkDbFallback);
+        }
+        if (missing.isEmpty()) {
+            metrics.multiGet(begin);
+            return result;
+        }
+        //3、未命中的id一次查询数据库
+        List<ID> missingIds = new ArrayList<>(missing.keySet());
+        long loadBegin = System.nanoTime();
+        Map<ID, T> loaded = bulkDbFallback.apply(missingIds);
+        long elapsed = System.nanoTime() - loadBegin;
+        metrics.load(elapsed);
+        long delta = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        //4、用pipeline写回缓存，不存在的id缓存空值
+        for (Map.Entry<ID, List<Integer>> entry : missing.entrySet()) {
+            T t = loaded == null ? null : loaded.get(entry.getKey());
+            for (Integer i : entry.getValue()) {
+                result.set(i, t);
             }
-            //获取互斥锁成功，则根据id查询对象，若查不到则缓存空值，并返回空值
-            t = dbFallback.apply(id);
-            //解决缓存穿透
+            putLocal(this.cacheKeyPrefix + entry.getKey(), t);
+        }
+        writeMany(missingIds, loaded, delta);
+        metrics.multiGet(begin);
+        return result;
+    }
+
+    /**
+     * 用pipeline写入批量查询的结果：有数据的id按逻辑过期的格式写入，并设置redis的过期时间；不存在的id缓存空值
+     *
+     * @param ids
+     * @param loaded id -> 数据，不存在的id不在其中
+     * @param delta  查询数据库的耗时（毫秒）
+     */
+    private <T, ID> void writeMany(List<ID> ids, Map<ID, T> loaded, long delta) {
+        Map<String, byte[]> toWrite = new LinkedHashMap<>();
+        List<String> nullsToWrite = new ArrayList<>();
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(this.cacheLogicExpireTTLTimeUnit.toSeconds(this.cacheLogicExpireTTL));
+        for (ID id : ids) {
+            String key = this.cacheKeyPrefix + id;
+            T t = loaded == null ? null : loaded.get(id);
             if (t == null) {
-                stringRedisTemplate.opsForValue().set(key, "", this.cacheMissingTTL, this.cacheMissingTTLTimeUnit);
-                return null;
+                nullsToWrite.add(key);
+            } else {
+                byte[] value = codec.encode(newRedisData(t, expireTime, delta));
+                metrics.payload(value.length);
+                toWrite.put(key, value);
             }
-            //若数据库里有，就缓存到redis，并返回数据
-//            this.setWithTTL(key, t, this.cacheTTL, this.cacheTTLTimeUnit);
-            this.setWithLogicExpire(key, t, this.cacheTTL);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            unLock(key + ":mutex");
         }
-        return t;
+        Expiration expiration = Expiration.from(this.cacheTTL, this.cacheTTLTimeUnit);
+        Expiration nullExpiration = Expiration.from(this.cacheMissingTTL, this.cacheMissingTTLTimeUnit);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, byte[]> entry : toWrite.entrySet()) {
+                connection.stringCommands().set(bytes(entry.getKey()), entry.getValue(),
+                        expiration, RedisStringCommands.SetOption.upsert());
+            }
+            for (String key : nullsToWrite) {
+                connection.stringCommands().set(bytes(key), NULL_BYTES,
+                        nullExpiration, RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
 
+    /**
+     * 批量查询中逻辑过期的id：逐个获取重建互斥锁后，在后台线程用一次批量查询重建
+     *
+     * @param ids
+     * @param bulkDbFallback
+     */
+    private <T, ID> void rebuildManyAsync(List<ID> ids, Function<List<ID>, Map<ID, T>> bulkDbFallback) {
+        List<ID> locked = new ArrayList<>(ids.size());
+        List<String> mutexKeys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            String mutexKey = this.cacheKeyPrefix + id + ":mutex";
+            if (tryLock(mutexKey, this.cacheMutexTTL, this.cacheMutexTTLTimeUnit)) {
+                locked.add(id);
+                mutexKeys.add(mutexKey);
+            } else {
+                //其他线程正在重建
+                metrics.mutexContended();
+            }
+        }
+        if (locked.isEmpty()) {
+            return;
+        }
+        try {
+            rebuildExecutor.submit(() -> {
+                long begin = System.nanoTime();
+                try {
+                    Map<ID, T> loaded = bulkDbFallback.apply(locked);
+                    writeMany(locked, loaded, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+                } catch (Exception e) {
+                    log.error("批量重建缓存失败：{}{}", this.cacheKeyPrefix, locked, e);
+                } finally {
+                    stringRedisTemplate.delete(mutexKeys);
+                    metrics.rebuild(System.nanoTime() - begin);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stringRedisTemplate.delete(mutexKeys);
+            log.warn("批量缓存重建任务被拒绝：{}{}", this.cacheKeyPrefix, locked);
+        }
+    }
 
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -210,9 +833,6 @@ public class CacheClient {
         stringRedisTemplate.delete(key);
     }
 
-
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
     /**
      * 使用“逻辑过期”避免缓存击穿
      *
@@ -223,58 +843,146 @@ public class CacheClient {
      * @param <ID>
      * @return
      */
+    @SuppressWarnings("unchecked")
     public <T, ID> T queryWithLogicExpire(ID id, Class<T> type, Function<ID, T> dbFallback) {
+        long begin = System.nanoTime();
+        //布隆过滤器判断id一定不存在，直接返回
+        if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+            metrics.get(CacheMetrics.Result.REJECTED, begin);
+            return null;
+        }
         String key = this.cacheKeyPrefix + id;
+        //先查本地缓存
+        Object local = getLocal(key);
+        if (local != null) {
+            metrics.get(local == NULL_VALUE ? CacheMetrics.Result.NULL_HIT : CacheMetrics.Result.LOCAL_HIT, begin);
+            return unwrapLocal(local);
+        }
         //从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] raw = getRaw(key);
+        //缓存穿透：命中空值
+        if (raw != null && isNullValue(raw)) {
+            putLocal(key, null);
+            metrics.get(CacheMetrics.Result.NULL_HIT, begin);
+            return null;
+        }
         //如果缓存未命中
-        if (StrUtil.isBlank(json)) {
+        if (raw == null) {
 //            return null;  //（此情况下缓存重建由管理员负责维护，这一步返回空值，用户无法访问没访问过的数据）
-            return setWithLogicExpire(key, id, type, dbFallback, this.cacheLogicExpireTTL);
+            //首次查询使用互斥锁加载，加载后以逻辑过期的格式写入缓存（由queryWithMutex统计）
+            return queryWithMutex(id, type, dbFallback, false);
         }
         //如果缓存命中，判断缓存是否过期
-        //获取商铺信息反序列化json，获取时间并判断是否过期
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            //未过期，直接返回店铺
-            return JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        } else { //缓存逻辑过期了，重建缓存
-            T t = dbFallback.apply(id);
-            //获取互斥锁
-            if (tryLock(key + ":mutex", this.cacheMutexTTL, this.cacheMutexTTLTimeUnit)) {
-                CACHE_REBUILD_EXECUTOR.submit(() -> {
-                    try {
-                        //重建缓存
-                        this.setWithLogicExpire(key, t, this.cacheLogicExpireTTL);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    } finally {
-                        unLock(key + ":mutex");
-                    }
-                });
+        //获取时间并判断是否过期，只需要头部的时间戳，商铺信息在返回时才反序列化
+        CacheEntry entry = codec.read(raw);
+        if (entry.hasExpireTime() && !entry.isExpired(System.currentTimeMillis())) {
+            //未过期，直接返回店铺；若命中提前刷新，在后台重建缓存
+            if (shouldRefreshEarly(entry)) {
+                metrics.earlyRefresh();
+                rebuildAsync(key, id, dbFallback, entry.getExpireAt());
             }
+            T t = entry.getData(type);
+            putLocal(key, t);
+            metrics.get(CacheMetrics.Result.HIT, begin);
             return t;
         }
+        //缓存逻辑过期了，直接返回旧数据，由一个后台线程查询数据库并重建缓存
+        rebuildAsync(key, id, dbFallback, entry.getExpireAt());
+        T t = entry.getData(type);
+        metrics.get(CacheMetrics.Result.STALE, begin);
+        return t;
+    }
+
+    /**
+     * XFetch：当 当前时间 - 重建耗时 * beta * ln(随机数) >= 过期时间 时提前刷新
+     *
+     * @param entry
+     * @return
+     */
+    private boolean shouldRefreshEarly(CacheEntry entry) {
+        long delta = entry.getDelta();
+        if (earlyRefreshBeta <= 0 || delta <= 0 || !entry.hasExpireTime()) {
+            return false;
+        }
+        double gap = -delta * earlyRefreshBeta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= entry.getExpireAt();
+    }
 
+    /**
+     * 用 GETRANGE 只读取缓存值的头部，获取逻辑过期时间
+     *
+     * @param key
+     * @return 缓存不存在或不是带头部的二进制编码时返回null
+     */
+    private Long readExpireAt(String key) {
+        byte[] header = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().getRange(bytes(key), 0, BinaryCacheCodec.HEADER_LENGTH - 1));
+        return BinaryCacheCodec.readExpireAt(header);
+    }
+
+    /**
+     * 以逻辑过期的格式写入缓存，同时记录重建耗时
+     *
+     * @param key
+     * @param value
+     * @param ttlSeconds
+     * @param delta
+     */
+    private void writeLogicExpire(String key, Object value, long ttlSeconds, long delta) {
+        write(key, newRedisData(value, LocalDateTime.now().plusSeconds(ttlSeconds), delta), null, null);
+    }
 
-//        if (tryLock(key + ":mutex", this.cacheMutexTTL, this.cacheMutexTTLTimeUnit)){
-//            // 6.3.成功，开启独立线程，实现缓存重建
-//            CACHE_REBUILD_EXECUTOR.submit(() -> {
-//                try {
-//                    // 查询数据库
-//                    T t = dbFallback.apply(id);
-//                    // 重建缓存
-//                    this.setWithLogicExpire(key, id, type, dbFallback, this.cacheLogicExpireTTL);
-//                } catch (Exception e) {
-//                    throw new RuntimeException(e);
-//                }finally {
-//                    // 释放锁
-//                    unlock(lockKey);
-//                }
-//            });
-//        }
-//        return null;
+    /**
+     * 获取互斥锁成功后，在后台线程查询数据库并以逻辑过期的格式重建缓存
+     *
+     * @param key
+     * @param id
+     * @param dbFallback
+     * @param expireAt   读到的逻辑过期时间，缓存已被其他节点重写时不再重建
+     * @param <T>
+     * @param <ID>
+     */
+    private <T, ID> void rebuildAsync(String key, ID id, Function<ID, T> dbFallback, long expireAt) {
+        String mutexKey = key + ":mutex";
+        if (!tryLock(mutexKey, this.cacheMutexTTL, this.cacheMutexTTLTimeUnit)) {
+            //其他线程正在重建
+            metrics.mutexContended();
+            return;
+        }
+        try {
+            rebuildExecutor.submit(() -> {
+                long begin = System.nanoTime();
+                boolean rebuilt = false;
+                try {
+                    //读取到旧值之后其他节点可能已完成重建，只读头部比较逻辑过期时间
+                    Long current = readExpireAt(key);
+                    if (current != null && current != expireAt) {
+                        return;
+                    }
+                    //查询数据库
+                    rebuilt = true;
+                    T t = dbFallback.apply(id);
+                    long delta = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+                    if (t == null) {
+                        //数据已被删除，缓存空值
+                        writeNull(key);
+                    } else {
+                        //重建缓存
+                        writeLogicExpire(key, t, this.cacheLogicExpireTTLTimeUnit.toSeconds(this.cacheLogicExpireTTL), delta);
+                    }
+                } catch (Exception e) {
+                    log.error("重建缓存失败：{}", key, e);
+                } finally {
+                    unLock(mutexKey);
+                    if (rebuilt) {
+                        metrics.rebuild(System.nanoTime() - begin);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            unLock(mutexKey);
+            log.warn("缓存重建任务被拒绝：{}", key);
+        }
     }
 
 
@@ -0,0 +1,36 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的编解码方式，缓存值统一为 {@link RedisData}：逻辑过期时间、重建耗时和数据本身
+ * 空值（缓存穿透）由 {@link CacheClient} 单独保存为空串，不经过编解码
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码
+     *
+     * @param redisData
+     * @return
+     */
+    byte[] encode(RedisData redisData);
+
+    /**
+     * 读取缓存，只解析逻辑过期时间等元数据，data在 {@link CacheEntry#getData} 时才反序列化
+     *
+     * @param bytes
+     * @return
+     */
+    CacheEntry read(byte[] bytes);
+
+    /**
+     * 解码，data字段转换为type类型；没有逻辑过期时间的旧格式返回的expireTime为null
+     *
+     * @param bytes
+     * @param type
+     * @param <T>
+     * @return
+     */
+    default <T> RedisData decode(byte[] bytes, Class<T> type) {
+        return read(bytes).toRedisData(type);
+    }
+}
@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 从redis读出的一条缓存：逻辑过期时间和重建耗时在读取时就已解析，data在第一次获取时才反序列化
+ * 判断是否过期、是否提前刷新只需要比较时间戳，不需要解析整个值，也不需要创建LocalDateTime
+ */
+public abstract class CacheEntry {
+
+    /**
+     * 没有逻辑过期时间或重建耗时
+     */
+    public static final long NONE = -1;
+
+    //逻辑过期时间，毫秒时间戳
+    private final long expireAt;
+
+    //上一次重建缓存的耗时，毫秒
+    private final long delta;
+
+    private Object data;
+
+    private boolean decoded;
+
+    protected CacheEntry(long expireAt, long delta) {
+        this.expireAt = expireAt;
+        this.delta = delta;
+    }
+
+    public long getExpireAt() {
+        return expireAt;
+    }
+
+    public long getDelta() {
+        return delta;
+    }
+
+    /**
+     * 是否带逻辑过期时间，直接保存数据的旧格式没有
+     *
+     * @return
+     */
+    public boolean hasExpireTime() {
+        return expireAt != NONE;
+    }
+
+    /**
+     * 是否已逻辑过期，没有逻辑过期时间的永不过期
+     *
+     * @param now 当前毫秒时间戳
+     * @return
+     */
+    public boolean isExpired(long now) {
+        return expireAt != NONE && expireAt <= now;
+    }
+
+    /**
+     * 获取数据，第一次调用时反序列化
+     *
+     * @param type
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getData(Class<T> type) {
+        if (!decoded) {
+            data = decodeData(type);
+            decoded = true;
+        }
+        return (T) data;
+    }
+
+    protected abstract Object decodeData(Class<?> type);
+
+    /**
+     * 转换为 {@link RedisData}，会反序列化data
+     *
+     * @param type
+     * @return
+     */
+    public RedisData toRedisData(Class<?> type) {
+        RedisData redisData = new RedisData();
+        redisData.setData(getData(type));
+        redisData.setExpireTime(expireAt == NONE ? null : toLocalDateTime(expireAt));
+        redisData.setDelta(delta == NONE ? null : delta);
+        return redisData;
+    }
+
+    static long toEpochMilli(LocalDateTime time) {
+        return time == null ? NONE : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static LocalDateTime toLocalDateTime(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault());
+    }
+}
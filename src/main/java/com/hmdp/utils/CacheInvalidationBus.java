@@ -0,0 +1,271 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_STREAM;
+
+/**
+ * 跨节点的本地缓存失效总线
+ * 失效通知先在本节点立即生效，再按固定间隔合并去重后一次写入redis stream；
+ * 每个节点单独从stream读取其他节点的通知，断线重连后从上次读到的位置继续，
+ * 若期间的消息已被裁剪，则清空全部本地缓存
+ */
+@Slf4j
+@Component
+public class CacheInvalidationBus {
+
+    private static final String FIELD_NODE = "node";
+    private static final String FIELD_KEYS = "keys";
+    private static final String FIELD_PREFIXES = "prefixes";
+    private static final String SEPARATOR = "\n";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 合并写入的间隔
+     */
+    @Value("${hmdp.cache.invalidation.flush-millis:50}")
+    private long flushMillis = 50;
+
+    /**
+     * stream保留的最大消息数
+     */
+    @Value("${hmdp.cache.invalidation.max-length:10000}")
+    private long maxLength = 10000;
+
+    /**
+     * 当前节点的标识，读取时跳过自己发出的通知
+     */
+    private final String nodeId = UUID.randomUUID().toString(true);
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    //等待写入stream的key和前缀
+    private Set<String> pendingKeys = new LinkedHashSet<>();
+    private Set<String> pendingPrefixes = new LinkedHashSet<>();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidation-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidation-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        reader.submit(this::readLoop);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        flusher.shutdown();
+        flush();
+        reader.shutdownNow();
+    }
+
+    /**
+     * 订阅以prefix开头的key的失效通知
+     */
+    public void subscribe(String prefix, CacheInvalidationListener listener) {
+        subscriptions.add(new Subscription(prefix, listener));
+    }
+
+    /**
+     * 通知所有节点清除一个key
+     */
+    public void publish(String key) {
+        dispatchKey(key);
+        synchronized (this) {
+            pendingKeys.add(key);
+        }
+    }
+
+    /**
+     * 通知所有节点清除以prefix开头的所有key
+     */
+    public void publishPrefix(String prefix) {
+        dispatchPrefix(prefix);
+        synchronized (this) {
+            pendingPrefixes.add(prefix);
+        }
+    }
+
+    /**
+     * 把合并后的通知写入stream，一批只写一条消息
+     */
+    private void flush() {
+        Set<String> keys;
+        Set<String> prefixes;
+        synchronized (this) {
+            if (pendingKeys.isEmpty() && pendingPrefixes.isEmpty()) {
+                return;
+            }
+            keys = pendingKeys;
+            prefixes = pendingPrefixes;
+            pendingKeys = new LinkedHashSet<>();
+            pendingPrefixes = new LinkedHashSet<>();
+        }
+        //已按前缀清除的key不需要再单独发送
+        keys.removeIf(key -> prefixes.stream().anyMatch(key::startsWith));
+        Map<byte[], byte[]> body = new HashMap<>(4);
+        body.put(bytes(FIELD_NODE), bytes(nodeId));
+        body.put(bytes(FIELD_KEYS), bytes(String.join(SEPARATOR, keys)));
+        body.put(bytes(FIELD_PREFIXES), bytes(String.join(SEPARATOR, prefixes)));
+        MapRecord<byte[], byte[], byte[]> record = StreamRecords.newRecord().in(bytes(CACHE_INVALIDATE_STREAM)).ofMap(body);
+        try {
+            stringRedisTemplate.execute((RedisCallback<RecordId>) connection -> connection.streamCommands().xAdd(
+                    record, RedisStreamCommands.XAddOptions.maxlen(maxLength)
+            ), true);
+        } catch (Exception e) {
+            //其他节点的本地缓存会在过期后自然失效
+            log.error("发送缓存失效通知失败，key：{}，前缀：{}", keys, prefixes, e);
+        }
+    }
+
+    /**
+     * 读取其他节点发出的失效通知
+     */
+    private void readLoop() {
+        String lastId = null;
+        boolean recovering = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (lastId == null) {
+                    lastId = latestId();
+                }
+                if (recovering) {
+                    //重连后检查上次读到的消息之后是否有消息已被裁剪
+                    checkGap(lastId);
+                    recovering = false;
+                }
+                //XREAD COUNT 100 BLOCK 2000 STREAMS stream.cache-invalidation lastId
+                //只读取一个stream，可变参数的泛型数组是安全的
+                @SuppressWarnings("unchecked")
+                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                        StreamReadOptions.empty().count(100).block(Duration.ofSeconds(2)),
+                        StreamOffset.create(CACHE_INVALIDATE_STREAM, ReadOffset.from(lastId))
+                );
+                if (list == null || list.isEmpty()) {
+                    continue;
+                }
+                for (MapRecord<String, Object, Object> record : list) {
+                    lastId = record.getId().getValue();
+                    handle(record.getValue());
+                }
+            } catch (Exception e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                log.error("读取缓存失效通知异常", e);
+                recovering = lastId != null;
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private String latestId() {
+        List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream()
+                .reverseRange(CACHE_INVALIDATE_STREAM, Range.unbounded(), Limit.limit().count(1));
+        return list == null || list.isEmpty() ? "0-0" : list.get(0).getId().getValue();
+    }
+
+    private void checkGap(String lastId) {
+        List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream()
+                .range(CACHE_INVALIDATE_STREAM, Range.unbounded(), Limit.limit().count(1));
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        //上次读到的消息仍在stream中，说明之后的消息都没有被裁剪
+        RecordId first = list.get(0).getId();
+        RecordId last = RecordId.of(lastId);
+        if (first.getTimestamp() > last.getTimestamp()
+                || (first.getTimestamp().equals(last.getTimestamp()) && first.getSequence() > last.getSequence())) {
+            log.warn("缓存失效通知可能已丢失，清空全部本地缓存");
+            for (Subscription subscription : subscriptions) {
+                subscription.listener.invalidateAll();
+            }
+        }
+    }
+
+    private void handle(Map<Object, Object> value) {
+        if (nodeId.equals(value.get(FIELD_NODE))) {
+            return;
+        }
+        for (String prefix : StrUtil.split((String) value.get(FIELD_PREFIXES), SEPARATOR, true, true)) {
+            dispatchPrefix(prefix);
+        }
+        for (String key : StrUtil.split((String) value.get(FIELD_KEYS), SEPARATOR, true, true)) {
+            dispatchKey(key);
+        }
+    }
+
+    private void dispatchKey(String key) {
+        for (Subscription subscription : subscriptions) {
+            if (key.startsWith(subscription.prefix)) {
+                subscription.listener.invalidate(key);
+            }
+        }
+    }
+
+    private void dispatchPrefix(String prefix) {
+        for (Subscription subscription : subscriptions) {
+            if (prefix.startsWith(subscription.prefix)) {
+                subscription.listener.invalidatePrefix(prefix);
+            } else if (subscription.prefix.startsWith(prefix)) {
+                subscription.listener.invalidateAll();
+            }
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Subscription {
+        private final String prefix;
+        private final CacheInvalidationListener listener;
+
+        private Subscription(String prefix, CacheInvalidationListener listener) {
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.hmdp.utils;
+
+/**
+ * 本地缓存失效通知的接收方，见 {@link CacheInvalidationBus}
+ */
+public interface CacheInvalidationListener {
+
+    /**
+     * 清除一个key
+     */
+    void invalidate(String key);
+
+    /**
+     * 清除以prefix开头的所有key
+     */
+    void invalidatePrefix(String prefix);
+
+    /**
+     * 清除全部，在可能漏掉通知时调用（如失效消息已被裁剪）
+     */
+    void invalidateAll();
+}
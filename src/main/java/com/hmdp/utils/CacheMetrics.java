@@ -0,0 +1,199 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个缓存区域的监控指标，所有指标都带有 cache={区域名称} 标签
+ * <ul>
+ *     <li>cache.gets：按结果（result）统计的查询次数</li>
+ *     <li>cache.latency：查询耗时，op=get 为单个查询，op=multi_get 为批量查询</li>
+ *     <li>cache.load：未命中时同步查询数据库的耗时</li>
+ *     <li>cache.rebuild：逻辑过期后后台重建缓存的耗时</li>
+ *     <li>cache.early.refresh：逻辑过期前提前触发后台刷新的次数</li>
+ *     <li>cache.mutex.contention：获取重建互斥锁失败的次数；cache.mutex.timeout：等待重建超时、直接查询数据库的次数</li>
+ *     <li>cache.payload.size：写入redis的缓存值大小（字节）</li>
+ * </ul>
+ */
+public class CacheMetrics {
+
+    /**
+     * 查询结果
+     */
+    public enum Result {
+        /**
+         * 命中本地缓存
+         */
+        LOCAL_HIT,
+        /**
+         * 命中redis
+         */
+        HIT,
+        /**
+         * 命中缓存的空值（本地或redis）
+         */
+        NULL_HIT,
+        /**
+         * 未命中，查询数据库
+         */
+        MISS,
+        /**
+         * 逻辑过期，返回旧数据
+         */
+        STALE,
+        /**
+         * 被布隆过滤器拦截
+         */
+        REJECTED;
+
+        public String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final String name;
+
+    private final Map<Result, Counter> gets = new EnumMap<>(Result.class);
+
+    private final Timer getLatency;
+    private final Timer multiGetLatency;
+    private final Timer loadTimer;
+    private final Timer rebuildTimer;
+    private final Counter earlyRefreshCounter;
+    private final Counter mutexContention;
+    private final Counter mutexTimeout;
+    private final DistributionSummary payloadSize;
+
+    public CacheMetrics(String name, MeterRegistry registry) {
+        this.name = name;
+        for (Result result : Result.values()) {
+            gets.put(result, Counter.builder("cache.gets")
+                    .tag("cache", name)
+                    .tag("result", result.tag())
+                    .description("按结果统计的缓存查询次数")
+                    .register(registry));
+        }
+        this.getLatency = latencyTimer(registry, "get");
+        this.multiGetLatency = latencyTimer(registry, "multi_get");
+        this.loadTimer = Timer.builder("cache.load")
+                .tag("cache", name)
+                .description("未命中时同步查询数据库的耗时")
+                .register(registry);
+        this.rebuildTimer = Timer.builder("cache.rebuild")
+                .tag("cache", name)
+                .description("逻辑过期后后台重建缓存的耗时")
+                .register(registry);
+        this.earlyRefreshCounter = Counter.builder("cache.early.refresh")
+                .tag("cache", name)
+                .description("逻辑过期前提前触发后台刷新的次数")
+                .register(registry);
+        this.mutexContention = Counter.builder("cache.mutex.contention")
+                .tag("cache", name)
+                .description("获取重建互斥锁失败的次数")
+                .register(registry);
+        this.mutexTimeout = Counter.builder("cache.mutex.timeout")
+                .tag("cache", name)
+                .description("等待其他节点重建超时、直接查询数据库的次数")
+                .register(registry);
+        this.payloadSize = DistributionSummary.builder("cache.payload.size")
+                .tag("cache", name)
+                .baseUnit("bytes")
+                .description("写入redis的缓存值大小")
+                .register(registry);
+    }
+
+    private Timer latencyTimer(MeterRegistry registry, String op) {
+        return Timer.builder("cache.latency")
+                .tag("cache", name)
+                .tag("op", op)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .description("缓存查询耗时")
+                .register(registry);
+    }
+
+    public void get(Result result) {
+        gets.get(result).increment();
+    }
+
+    /**
+     * 记录一次单个查询
+     *
+     * @param result
+     * @param beginNanos 开始查询时的 System.nanoTime()
+     */
+    public void get(Result result, long beginNanos) {
+        gets.get(result).increment();
+        getLatency.record(System.nanoTime() - beginNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void multiGet(long beginNanos) {
+        multiGetLatency.record(System.nanoTime() - beginNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void load(long nanos) {
+        loadTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rebuild(long nanos) {
+        rebuildTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void earlyRefresh() {
+        earlyRefreshCounter.increment();
+    }
+
+    public void mutexContended() {
+        mutexContention.increment();
+    }
+
+    public void mutexTimeout() {
+        mutexTimeout.increment();
+    }
+
+    public void payload(int bytes) {
+        payloadSize.record(bytes);
+    }
+
+    /**
+     * 汇总当前的统计，供监控端点展示
+     *
+     * @return
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        Map<String, Long> results = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<Result, Counter> entry : gets.entrySet()) {
+            long count = (long) entry.getValue().count();
+            results.put(entry.getKey().tag(), count);
+            total += count;
+        }
+        long hits = results.get(Result.LOCAL_HIT.tag()) + results.get(Result.HIT.tag()) + results.get(Result.STALE.tag());
+        snapshot.put("gets", results);
+        snapshot.put("hitRatio", ratio(hits, total));
+        snapshot.put("nullHitRatio", ratio(results.get(Result.NULL_HIT.tag()), total));
+        snapshot.put("missRatio", ratio(results.get(Result.MISS.tag()), total));
+        snapshot.put("getLatencyMeanMs", getLatency.mean(TimeUnit.MILLISECONDS));
+        snapshot.put("getLatencyMaxMs", getLatency.max(TimeUnit.MILLISECONDS));
+        snapshot.put("loadMeanMs", loadTimer.mean(TimeUnit.MILLISECONDS));
+        snapshot.put("rebuilds", rebuildTimer.count());
+        snapshot.put("rebuildMeanMs", rebuildTimer.mean(TimeUnit.MILLISECONDS));
+        snapshot.put("earlyRefreshes", (long) earlyRefreshCounter.count());
+        snapshot.put("mutexContention", (long) mutexContention.count());
+        snapshot.put("mutexTimeouts", (long) mutexTimeout.count());
+        snapshot.put("payloadMeanBytes", payloadSize.mean());
+        snapshot.put("payloadMaxBytes", payloadSize.max());
+        return snapshot;
+    }
+
+    private static double ratio(long count, long total) {
+        return total == 0 ? 0 : (double) count / total;
+    }
+}
@@ -0,0 +1,215 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 本节点的热点key探测：滑动窗口内的count-min sketch计数，访问次数超过阈值的key记为热点，只保留访问最多的topK个
+ * 滑动窗口由若干个时间片组成，每个时间片一个sketch，过期的时间片在下次写入时清零
+ * 可按比例采样，采样时估算值按采样率放大
+ */
+public class HotKeyDetector {
+
+    //sketch的行数（哈希函数个数）
+    private static final int DEPTH = 4;
+
+    //sketch每行的计数器个数，2的幂
+    private static final int WIDTH = 4096;
+
+    private final String name;
+
+    private final long bucketMillis;
+
+    private final Bucket[] buckets;
+
+    private final long threshold;
+
+    private final int topK;
+
+    private final double sampleRate;
+
+    //当前的热点key及其估算的访问次数
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param name         名称，用于展示
+     * @param windowMillis 滑动窗口长度
+     * @param bucketCount  窗口划分的时间片个数，越多窗口滑动越平滑
+     * @param threshold    窗口内访问次数达到该值即为热点
+     * @param topK         最多保留的热点key个数
+     * @param sampleRate   采样率，(0, 1]
+     */
+    public HotKeyDetector(String name, long windowMillis, int bucketCount, long threshold, int topK, double sampleRate) {
+        if (bucketCount <= 0 || windowMillis < bucketCount) {
+            throw new IllegalArgumentException("滑动窗口配置错误：window=" + windowMillis + "ms, buckets=" + bucketCount);
+        }
+        if (sampleRate <= 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("采样率必须在(0, 1]之间：" + sampleRate);
+        }
+        this.name = name;
+        this.bucketMillis = windowMillis / bucketCount;
+        this.buckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.threshold = threshold;
+        this.topK = topK;
+        this.sampleRate = sampleRate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key
+     * @return 是否为热点key
+     */
+    public boolean record(String key) {
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return hotKeys.containsKey(key);
+        }
+        long epoch = currentTimeMillis() / bucketMillis;
+        Bucket bucket = bucket(epoch);
+        int h1 = hash1(key);
+        int h2 = hash2(h1);
+        for (int row = 0; row < DEPTH; row++) {
+            bucket.counts.incrementAndGet(index(row, h1, h2));
+        }
+        long estimate = estimate(epoch, h1, h2);
+        if (estimate >= threshold) {
+            if (hotKeys.put(key, estimate) == null && hotKeys.size() > topK) {
+                evictColdest();
+            }
+            return true;
+        }
+        hotKeys.remove(key);
+        return false;
+    }
+
+    /**
+     * 是否为热点key，不记录访问
+     *
+     * @param key
+     * @return
+     */
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 估算key在滑动窗口内的访问次数
+     *
+     * @param key
+     * @return
+     */
+    public long estimate(String key) {
+        int h1 = hash1(key);
+        return estimate(currentTimeMillis() / bucketMillis, h1, hash2(h1));
+    }
+
+    /**
+     * 当前的热点key，按访问次数从多到少排序
+     *
+     * @return key -> 窗口内估算的访问次数
+     */
+    public Map<String, Long> hotKeys() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 获取当前时间片，时间片已过期时清零后复用，并重新计算热点key
+     */
+    private Bucket bucket(long epoch) {
+        Bucket bucket = buckets[(int) (epoch % buckets.length)];
+        if (bucket.epoch != epoch) {
+            boolean rotated = false;
+            synchronized (bucket) {
+                if (bucket.epoch != epoch) {
+                    for (int i = 0; i < bucket.counts.length(); i++) {
+                        bucket.counts.set(i, 0);
+                    }
+                    bucket.epoch = epoch;
+                    rotated = true;
+                }
+            }
+            if (rotated) {
+                //窗口滑动后不再达到阈值的key不再是热点
+                for (String key : hotKeys.keySet()) {
+                    long estimate = estimate(key);
+                    if (estimate < threshold) {
+                        hotKeys.remove(key);
+                    } else {
+                        hotKeys.replace(key, estimate);
+                    }
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private long estimate(long epoch, int h1, int h2) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(row, h1, h2);
+            long sum = 0;
+            for (Bucket bucket : buckets) {
+                //只统计窗口内的时间片
+                if (bucket.epoch > epoch - buckets.length) {
+                    sum += bucket.counts.get(index);
+                }
+            }
+            min = Math.min(min, sum);
+        }
+        return (long) (min / sampleRate);
+    }
+
+    private void evictColdest() {
+        hotKeys.entrySet().stream()
+                .min(Comparator.comparingLong(Map.Entry::getValue))
+                .ifPresent(entry -> hotKeys.remove(entry.getKey(), entry.getValue()));
+    }
+
+    private static int index(int row, int h1, int h2) {
+        return row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+    }
+
+    private static int hash1(String key) {
+        //murmur3的finalizer，打散String.hashCode的低位
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int hash2(int h1) {
+        //第二个哈希必须为奇数，保证各行落在不同的位置
+        return (Integer.rotateLeft(h1, 16) * 0x9e3779b9) | 1;
+    }
+
+    private static final class Bucket {
+        private volatile long epoch = Long.MIN_VALUE;
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(DEPTH * WIDTH);
+    }
+}
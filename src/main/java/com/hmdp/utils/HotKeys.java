@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本节点所有热点key探测器，按名称（缓存区域、blog-liked等）区分，参数相同
+ */
+public class HotKeys {
+
+    private final long windowMillis;
+    private final int buckets;
+    private final long threshold;
+    private final int topK;
+    private final double sampleRate;
+
+    private final Map<String, HotKeyDetector> detectors = new ConcurrentHashMap<>();
+
+    public HotKeys(long windowMillis, int buckets, long threshold, int topK, double sampleRate) {
+        this.windowMillis = windowMillis;
+        this.buckets = buckets;
+        this.threshold = threshold;
+        this.topK = topK;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 获取探测器，不存在时创建
+     *
+     * @param name
+     * @return
+     */
+    public HotKeyDetector detector(String name) {
+        return detectors.computeIfAbsent(name,
+                k -> new HotKeyDetector(k, windowMillis, buckets, threshold, topK, sampleRate));
+    }
+
+    public Collection<HotKeyDetector> all() {
+        return detectors.values();
+    }
+}
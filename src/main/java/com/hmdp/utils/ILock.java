@@ -1,5 +1,7 @@
 package com.hmdp.utils;
 
+import java.util.concurrent.TimeUnit;
+
 public interface ILock {
 
     /**
@@ -9,8 +11,24 @@ public interface ILock {
      */
     boolean tryLock(long timeoutSec);
 
+    /**
+     * 尝试获取锁，不等待；持有期间自动续期，直到释放
+     * @return true代表获取锁成功; false代表获取锁失败
+     */
+    boolean tryLock();
+
+    /**
+     * 在等待时间内获取锁；持有期间自动续期，直到释放
+     * @param waitTime 最长等待时间
+     * @param unit
+     * @return true代表获取锁成功; false代表等待超时
+     * @throws InterruptedException 等待时被中断
+     */
+    boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException;
+
     /**
      * 释放锁
+     * @return true代表释放成功（重入时为次数减一）; false代表锁已不由当前线程持有，如业务执行完之前锁已过期
      */
-    void unlock();
+    boolean unlock();
 }
@@ -0,0 +1,15 @@
+package com.hmdp.utils;
+
+/**
+ * 全局唯一id的生成方式
+ * 生成的id统一为：31位秒级时间戳（从 2022-01-01 开始） + 32位序列号，不同实现生成的id可以混用
+ */
+public interface IdGenerator {
+
+    /**
+     * 生成一个id
+     * @param keyPrefix id的业务前缀，比如”order“、”shop“等等
+     * @return
+     */
+    long nextId(String keyPrefix);
+}
@@ -0,0 +1,54 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录获取耗时、持有时间和解锁时锁已过期次数的锁，通过 {@link LockMetrics#instrument} 获取
+ */
+public class InstrumentedLock implements ILock {
+
+    private final String name;
+    private final ILock delegate;
+    private final LockMetrics metrics;
+
+    InstrumentedLock(String name, ILock delegate, LockMetrics metrics) {
+        this.name = name;
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        long begin = System.nanoTime();
+        boolean success = delegate.tryLock(timeoutSec);
+        metrics.acquired(name, success, System.nanoTime() - begin);
+        return success;
+    }
+
+    @Override
+    public boolean tryLock() {
+        long begin = System.nanoTime();
+        boolean success = delegate.tryLock();
+        metrics.acquired(name, success, System.nanoTime() - begin);
+        return success;
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        long begin = System.nanoTime();
+        boolean success = false;
+        try {
+            success = delegate.tryLock(waitTime, unit);
+        } finally {
+            metrics.acquired(name, success, System.nanoTime() - begin);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean unlock() {
+        boolean owned = delegate.unlock();
+        metrics.released(name, owned);
+        return owned;
+    }
+}
@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * hutool JSON编码，与引入编解码之前写入redis的格式相同
+ * 也能读取二进制编码的值，便于两种编码之间切换
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final JsonCacheCodec INSTANCE = new JsonCacheCodec();
+
+    @Override
+    public byte[] encode(RedisData redisData) {
+        //没有逻辑过期时间时直接保存数据本身
+        Object value = redisData.getExpireTime() == null && redisData.getDelta() == null ? redisData.getData() : redisData;
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CacheEntry read(byte[] bytes) {
+        if (BinaryCacheCodec.isBinary(bytes)) {
+            return BinaryCacheCodec.DEFAULT.read(bytes);
+        }
+        //JSON需要整体解析，data先保留为JSONObject或JSONArray（如店铺类型列表），获取时再转换为实体
+        JSON json = JSONUtil.parse(new String(bytes, StandardCharsets.UTF_8));
+        if (json instanceof JSONObject) {
+            JSONObject obj = (JSONObject) json;
+            if (obj.containsKey("expireTime") && obj.containsKey("data")) {
+                //带逻辑过期时间的格式
+                Long delta = obj.getLong("delta");
+                Object data = obj.get("data");
+                return new JsonEntry(CacheEntry.toEpochMilli(obj.get("expireTime", LocalDateTime.class)),
+                        delta == null ? CacheEntry.NONE : delta, data instanceof JSON ? (JSON) data : null);
+            }
+        }
+        //直接保存数据的格式
+        return new JsonEntry(CacheEntry.NONE, CacheEntry.NONE, json);
+    }
+
+    private static class JsonEntry extends CacheEntry {
+
+        private final JSON data;
+
+        JsonEntry(long expireAt, long delta, JSON data) {
+            super(expireAt, delta);
+            this.data = data;
+        }
+
+        @Override
+        protected Object decodeData(Class<?> type) {
+            return data == null ? null : data.toBean(type);
+        }
+    }
+}
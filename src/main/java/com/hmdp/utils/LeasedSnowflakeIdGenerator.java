@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+/**
+ * 使用租用的机器id生成雪花id：租约失效时拒绝生成，机器id更换后切换到新机器id的生成器
+ */
+public class LeasedSnowflakeIdGenerator implements IdGenerator {
+
+    private final WorkerIdLease lease;
+
+    private volatile SnowflakeIdGenerator generator;
+
+    public LeasedSnowflakeIdGenerator(WorkerIdLease lease) {
+        this.lease = lease;
+    }
+
+    /**
+     * @throws IllegalStateException 机器id的租约已失效
+     */
+    @Override
+    public long nextId(String keyPrefix) {
+        long workerId = lease.currentWorkerId();
+        SnowflakeIdGenerator current = generator;
+        if (current == null || current.getWorkerId() != workerId) {
+            current = switchTo(workerId);
+        }
+        return current.nextId(keyPrefix);
+    }
+
+    private synchronized SnowflakeIdGenerator switchTo(long workerId) {
+        SnowflakeIdGenerator current = generator;
+        if (current == null || current.getWorkerId() != workerId) {
+            current = new SnowflakeIdGenerator(workerId);
+            generator = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,124 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本节点所有锁的监控指标，都带有 lock={锁名称中第一个冒号之前的部分} 标签，如 order:1010 的标签为 order
+ * <ul>
+ *     <li>lock.acquire：获取锁的耗时，result=success|failure，失败次数即竞争失败或等待超时的次数</li>
+ *     <li>lock.hold：从获取到完全释放的持有时间</li>
+ *     <li>lock.lease.lost：解锁时发现锁已不由当前线程持有的次数，即业务执行完之前锁已过期</li>
+ * </ul>
+ * 同时记录本节点当前持有的锁，供监控端点展示
+ */
+public class LockMetrics {
+
+    private final MeterRegistry registry;
+
+    //锁名称:线程id -> 持有信息
+    private final Map<String, Held> held = new ConcurrentHashMap<>();
+
+    public LockMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 包装一个锁，记录它的获取、持有和释放
+     */
+    public ILock instrument(String name, ILock lock) {
+        return new InstrumentedLock(name, lock, this);
+    }
+
+    void acquired(String name, boolean success, long nanos) {
+        Timer.builder("lock.acquire")
+                .tag("lock", prefix(name))
+                .tag("result", success ? "success" : "failure")
+                .description("获取锁的耗时")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (success) {
+            held.computeIfAbsent(heldKey(name), k -> new Held(name)).count++;
+        }
+    }
+
+    /**
+     * 解锁后调用
+     *
+     * @param owned 解锁时锁是否仍由当前线程持有
+     */
+    void released(String name, boolean owned) {
+        //key中带有线程id，只有持有线程会修改自己的记录
+        String key = heldKey(name);
+        Held h = held.get(key);
+        if (h != null && owned && --h.count > 0) {
+            //重入时只是减少次数
+            return;
+        }
+        if (h != null) {
+            held.remove(key);
+            Timer.builder("lock.hold")
+                    .tag("lock", prefix(name))
+                    .description("锁的持有时间")
+                    .register(registry)
+                    .record(System.currentTimeMillis() - h.since, TimeUnit.MILLISECONDS);
+        }
+        if (!owned) {
+            Counter.builder("lock.lease.lost")
+                    .tag("lock", prefix(name))
+                    .description("解锁时锁已过期、不由当前线程持有的次数")
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    /**
+     * 本节点当前持有的锁，按持有时间从长到短排列
+     *
+     * @return
+     */
+    public List<Map<String, Object>> heldLocks() {
+        long now = System.currentTimeMillis();
+        List<Held> list = new ArrayList<>(held.values());
+        list.sort((a, b) -> Long.compare(a.since, b.since));
+        List<Map<String, Object>> result = new ArrayList<>(list.size());
+        for (Held h : list) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", h.name);
+            item.put("thread", h.thread);
+            item.put("holdCount", h.count);
+            item.put("heldMillis", now - h.since);
+            result.add(item);
+        }
+        return result;
+    }
+
+    static String prefix(String name) {
+        int index = name.indexOf(':');
+        return index < 0 ? name : name.substring(0, index);
+    }
+
+    private static String heldKey(String name) {
+        return name + ":" + Thread.currentThread().getId();
+    }
+
+    private static final class Held {
+        private final String name;
+        private final String thread = Thread.currentThread().getName();
+        private final long since = System.currentTimeMillis();
+        //只由持有线程修改
+        private volatile int count;
+
+        private Held(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.LoginProperties;
+import com.hmdp.dto.UserDTO;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 登录状态，支持两种token（hmdp.login.token-mode）：
+ * 1、redis：redis中的 login:token:{token} 加上本节点的短时缓存
+ * 缓存命中时不访问redis；登录状态的有效期按 hmdp.login.refresh-interval 滑动续期，每个token在间隔内最多执行一次EXPIRE；
+ * 退出登录时删除redis中的登录状态，并通过 {@link CacheInvalidationBus} 清除各节点的本地缓存
+ * 2、签名token：见 {@link TokenSigner}，验证时只检查签名、过期时间和本地的吊销记录，不访问redis
+ */
+@Component
+public class LoginSessions {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private LoginProperties loginProperties;
+
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Resource
+    private TokenRevocations tokenRevocations;
+
+    private Cache<String, Session> sessions;
+
+    /**
+     * 不存在或已过期的token，与登录状态分开缓存，大量随机token不会挤掉有效的登录状态
+     */
+    private Cache<String, Boolean> anonymous;
+
+    /**
+     * 未配置签名密钥时为null
+     */
+    private TokenSigner tokenSigner;
+
+    private long refreshIntervalMillis;
+
+    @PostConstruct
+    private void init() {
+        sessions = Caffeine.newBuilder()
+                .maximumSize(loginProperties.getSessionCacheMaxSize())
+                .expireAfterWrite(loginProperties.getSessionCacheTtl())
+                .build();
+        anonymous = Caffeine.newBuilder()
+                .maximumSize(loginProperties.getAnonymousCacheMaxSize())
+                .expireAfterWrite(loginProperties.getAnonymousCacheTtl())
+                .build();
+        refreshIntervalMillis = loginProperties.getRefreshInterval().toMillis();
+        if (StrUtil.isNotBlank(loginProperties.getSigningSecret())) {
+            tokenSigner = new TokenSigner(loginProperties.getSigningSecret());
+        } else if (loginProperties.getTokenMode() == LoginProperties.TokenMode.SIGNED) {
+            throw new IllegalStateException("hmdp.login.token-mode为signed时必须配置hmdp.login.signing-secret");
+        }
+        cacheInvalidationBus.subscribe(LOGIN_USER_KEY, new CacheInvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                sessions.invalidate(key.substring(LOGIN_USER_KEY.length()));
+            }
+
+            @Override
+            public void invalidatePrefix(String prefix) {
+                String tokenPrefix = prefix.substring(LOGIN_USER_KEY.length());
+                sessions.asMap().keySet().removeIf(token -> token.startsWith(tokenPrefix));
+            }
+
+            @Override
+            public void invalidateAll() {
+                sessions.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * 查询token对应的登录用户，并按需续期
+     *
+     * @param token
+     * @return 未登录或已过期时返回null
+     */
+    public UserDTO get(String token) {
+        long now = System.currentTimeMillis();
+        if (TokenSigner.isSignedToken(token)) {
+            TokenSigner.Claims claims = verify(token, now);
+            return claims == null ? null : claims.getUser();
+        }
+        if (anonymous.getIfPresent(token) != null) {
+            return null;
+        }
+        //未缓存时加载，同一个token的并发请求只有一个访问redis，其余等待它的结果
+        Session session = sessions.get(token, t -> load(t, now));
+        if (session == null) {
+            anonymous.put(token, Boolean.TRUE);
+            return null;
+        }
+        if (!refresh(token, session, now)) {
+            //登录状态已在redis中过期或被删除
+            sessions.invalidate(token);
+            anonymous.put(token, Boolean.TRUE);
+            return null;
+        }
+        return session.user;
+    }
+
+    /**
+     * 登录时创建token
+     *
+     * @param userDTO
+     * @param userMap 保存到redis中的用户信息，签名token不使用
+     * @return
+     */
+    public String create(UserDTO userDTO, Map<String, Object> userMap) {
+        long now = System.currentTimeMillis();
+        if (loginProperties.getTokenMode() == LoginProperties.TokenMode.SIGNED) {
+            return tokenSigner.sign(userDTO, UUID.fastUUID().toString(true),
+                    now + loginProperties.getSignedTokenTtl().toMillis());
+        }
+        String token = UUID.randomUUID().toString();
+        String key = LOGIN_USER_KEY + token;
+        stringRedisTemplate.opsForHash().putAll(key, userMap);
+        stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        sessions.put(token, new Session(userDTO, now));
+        return token;
+    }
+
+    /**
+     * 退出登录：签名token记录到吊销列表；redis中的登录状态直接删除，并清除各节点的本地缓存
+     */
+    public void remove(String token) {
+        if (TokenSigner.isSignedToken(token)) {
+            TokenSigner.Claims claims = verify(token, System.currentTimeMillis());
+            if (claims != null) {
+                tokenRevocations.revoke(claims.getTokenId(), claims.getExpireAt());
+            }
+            return;
+        }
+        String key = LOGIN_USER_KEY + token;
+        stringRedisTemplate.delete(key);
+        sessions.invalidate(token);
+        cacheInvalidationBus.publish(key);
+    }
+
+    /**
+     * @return 签名无效、已过期或已吊销时返回null
+     */
+    private TokenSigner.Claims verify(String token, long now) {
+        if (tokenSigner == null) {
+            return null;
+        }
+        TokenSigner.Claims claims = tokenSigner.verify(token, now);
+        return claims == null || tokenRevocations.isRevoked(claims.getTokenId()) ? null : claims;
+    }
+
+    /**
+     * @return token不存在或已过期时返回null，不放入登录状态的缓存
+     */
+    private Session load(String token, long now) {
+        String key = LOGIN_USER_KEY + token;
+        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        if (userMap.isEmpty()) {
+            return null;
+        }
+        stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        return new Session(BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false), now);
+    }
+
+    /**
+     * 距上次续期超过间隔时续期一次，同一token的并发请求只有一个执行EXPIRE
+     *
+     * @return false 登录状态已不存在
+     */
+    private boolean refresh(String token, Session session, long now) {
+        long last = session.lastRefresh.get();
+        if (now - last < refreshIntervalMillis || !session.lastRefresh.compareAndSet(last, now)) {
+            return true;
+        }
+        return Boolean.TRUE.equals(stringRedisTemplate.expire(LOGIN_USER_KEY + token, LOGIN_USER_TTL, TimeUnit.MINUTES));
+    }
+
+    private static final class Session {
+        private final UserDTO user;
+        private final AtomicLong lastRefresh;
+
+        private Session(UserDTO user, long lastRefresh) {
+            this.user = user;
+            this.lastRefresh = new AtomicLong(lastRefresh);
+        }
+    }
+}
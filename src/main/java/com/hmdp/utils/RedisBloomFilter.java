@@ -0,0 +1,184 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.HashUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.BLOOM_FILTER_KEY;
+
+/**
+ * 保存在redis位图中的布隆过滤器，本地保留一份副本，判断时不访问redis
+ * 本地副本的位与redis位图的位一一对应：第i位在redis中是第i/8个字节从高到低的第i%8位
+ */
+@Slf4j
+public class RedisBloomFilter {
+
+    private final String name;
+    private final String key;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 位数
+     */
+    private final long numBits;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int numHashFunctions;
+
+    /**
+     * 本地副本，每个long保存64位，高位在前
+     */
+    private final AtomicLongArray words;
+
+    /**
+     * 首次从数据库加载完成前，所有id都视为可能存在
+     */
+    private volatile boolean ready;
+
+    public RedisBloomFilter(String name, StringRedisTemplate stringRedisTemplate, long expectedInsertions, double fpp) {
+        this.name = name;
+        this.key = BLOOM_FILTER_KEY + name;
+        this.stringRedisTemplate = stringRedisTemplate;
+        //m = -n*ln(p)/(ln2)^2，按64位对齐；k = m/n*ln2
+        long bits = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.max(64, (bits + 63) / 64 * 64);
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.words = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 判断id是否可能存在，返回false时一定不存在
+     */
+    public boolean mightContain(Object id) {
+        if (!ready || id == null) {
+            return true;
+        }
+        for (long index : indexes(id)) {
+            if ((words.get((int) (index >>> 6)) & mask(index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新增数据后调用：写入redis位图，并通知其他节点更新本地副本
+     */
+    public void add(Object id) {
+        long[] indexes = indexes(id);
+        setLocal(indexes);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            for (long index : indexes) {
+                connection.stringCommands().setBit(rawKey, index, true);
+            }
+            return null;
+        });
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, name + ":" + id);
+    }
+
+    /**
+     * 收到其他节点的新增通知，只更新本地副本
+     */
+    public void addLocal(Object id) {
+        setLocal(indexes(id));
+    }
+
+    /**
+     * 批量加载已有数据：在本地计算位图，用 BITOP OR 一次合并进redis，再把redis位图合并回本地
+     */
+    public void load(Iterable<?> ids) {
+        long[] loaded = new long[words.length()];
+        for (Object id : ids) {
+            for (long index : indexes(id)) {
+                loaded[(int) (index >>> 6)] |= mask(index);
+            }
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] tempKey = (key + ":loading:" + Thread.currentThread().getId() + ":" + System.nanoTime()).getBytes(StandardCharsets.UTF_8);
+        byte[] value = toBytes(loaded);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(tempKey, value);
+            connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, tempKey);
+            connection.keyCommands().del(tempKey);
+            return null;
+        });
+        sync();
+        ready = true;
+    }
+
+    /**
+     * 把redis位图合并到本地副本，弥补漏掉的新增通知
+     */
+    public void sync() {
+        byte[] value = stringRedisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+        if (value == null) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(value, words.length() * 8));
+        for (int i = 0; i < words.length(); i++) {
+            long word = buffer.getLong();
+            if (word != 0) {
+                orWord(i, word);
+            }
+        }
+    }
+
+    /**
+     * 双重哈希：第i个位置 = (h1 + i * h2) mod m
+     */
+    private long[] indexes(Object id) {
+        byte[] bytes = id.toString().getBytes(StandardCharsets.UTF_8);
+        long[] hash = HashUtil.murmur128(bytes);
+        long[] indexes = new long[numHashFunctions];
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            indexes[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return indexes;
+    }
+
+    private void setLocal(long[] indexes) {
+        for (long index : indexes) {
+            orWord((int) (index >>> 6), mask(index));
+        }
+    }
+
+    private void orWord(int i, long bits) {
+        long current;
+        do {
+            current = words.get(i);
+            if ((current | bits) == current) {
+                return;
+            }
+        } while (!words.compareAndSet(i, current, current | bits));
+    }
+
+    private static long mask(long index) {
+        return 1L << (63 - (index & 63));
+    }
+
+    private static byte[] toBytes(long[] words) {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * 8);
+        for (long word : words) {
+            buffer.putLong(word);
+        }
+        return buffer.array();
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -12,9 +13,9 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfiguration {
 
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate<Object, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory){
         log.info("开始创建redis模板对象...");
-        RedisTemplate redisTemplate = new RedisTemplate();
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
         //设置Redis的连接工厂对象
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置Redis key的序列化器
@@ -22,4 +23,14 @@ public class RedisConfiguration {
         log.info("完成创建redis模板对象：{}", redisTemplate);
         return redisTemplate;
     }
+
+    /**
+     * redis发布订阅的监听容器，所有频道共用一个订阅连接
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
 }
@@ -5,12 +5,29 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 30L;
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
     public static final Long CACHE_NULL_TTL = 2L;
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_INVALIDATE_STREAM = "stream.cache-invalidation";
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_VOUCHER_KEY = "seckill:voucher:";
+    public static final String SECKILL_BEGIN_TIME_FIELD = "beginTime";
+    public static final String SECKILL_END_TIME_FIELD = "endTime";
+    public static final String SECKILL_BUCKETS_FIELD = "buckets";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_DEAD_LETTER_STREAM = "stream.orders.dead-letter";
+    public static final String SECKILL_ORDER_GROUP = "order-group";
+    public static final String BLOOM_FILTER_KEY = "bloom:";
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+    public static final String BLOOM_SHOP = "shop";
+    public static final String BLOOM_BLOG = "blog";
+    public static final String BLOOM_USER = "user";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -7,5 +7,9 @@ import java.time.LocalDateTime;
 @Data
 public class RedisData {
     private LocalDateTime expireTime;
+    /**
+     * 上一次重建缓存（查询数据库）的耗时，毫秒，用于提前刷新
+     */
+    private Long delta;
     private Object data;
 }
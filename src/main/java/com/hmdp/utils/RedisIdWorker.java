@@ -6,55 +6,53 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
 
+/**
+ * 全局id生成入口，具体的生成方式由 {@link IdGenerator} 决定，见 hmdp.id-worker.type
+ */
 @Component
 public class RedisIdWorker {
 
+    /**
+     * 开始时间戳
+     */
+    static final long BEGIN_TIMESTAMP = 1640995200L;
+
+    /**
+     * 序列号的位数
+     */
+    static final int COUNT_BITS = 32;
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1000;
+
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private IdGenerator idGenerator;
 
     public RedisIdWorker() {
     }
 
     public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+        this.idGenerator = new RedisSegmentIdGenerator(stringRedisTemplate, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public RedisIdWorker(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
     }
 
     @Override
     public String toString() {
         return "RedisIdWorker{" +
-                "stringRedisTemplate=" + stringRedisTemplate +
+                "idGenerator=" + idGenerator +
                 '}';
     }
 
-    /**
-     * 开始时间戳
-     */
-    private static final long BEGIN_TIMESTAMP = 1640995200L;
-
-    /**
-     * 序列号的位数
-     */
-    private static final int COUNT_BITS = 32;
-
     /**
      * 生成一个order订单号
      * @param keyPrefix 订单的前缀符，比如”order“、”shop“等等
      * @return
      */
     public long nextId(String keyPrefix) {
-        //1、生成时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
-        long timestamp = nowSecond - BEGIN_TIMESTAMP;
-        //2、生成序列号
-        //获取当前日期，精确到日
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        //自增长
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
-        //3、拼接并返回
-        return timestamp << COUNT_BITS | count;
+        return idGenerator.nextId(keyPrefix);
     }
 
     public static void main(String[] args) {
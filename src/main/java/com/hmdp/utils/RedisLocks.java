@@ -0,0 +1,221 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分布式可重入锁的入口，负责本节点所有锁共用的部分：
+ * 1、看门狗：未指定过期时间的锁，持有期间每隔 过期时间/3 续期一次
+ * 2、解锁通知：本节点有线程等待某个锁时才订阅该锁的频道 lock:channel:{name}，锁释放时唤醒其中一个线程，等待时不需要轮询redis
+ */
+@Slf4j
+@Component
+public class RedisLocks implements MessageListener {
+
+    static final String KEY_PREFIX = "lock:";
+
+    static final String CHANNEL_PREFIX = "lock:channel:";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 看门狗续期的锁过期时间，节点宕机后锁最多在这么长时间后自动释放
+     */
+    @Value("${hmdp.lock.watchdog-lease-millis:30000}")
+    private long watchdogLeaseMillis = 30000;
+
+    /**
+     * 两级锁中本地分段锁的段数
+     */
+    @Value("${hmdp.lock.local-stripes:1024}")
+    private int localStripes = 1024;
+
+    private StripedLock stripedLock;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private LockMetrics lockMetrics;
+
+    /**
+     * 本节点的标识，与线程id一起作为锁的持有者
+     */
+    private final String nodeId = UUID.randomUUID().toString(true);
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //频道 -> 本节点等待该锁的线程
+    private final Map<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    //锁的key:持有者 -> 续期任务
+    private final Map<String, ScheduledFuture<?>> renewals = new ConcurrentHashMap<>();
+
+    public RedisLocks() {
+    }
+
+    public RedisLocks(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+        init();
+    }
+
+    @PostConstruct
+    private void init() {
+        stripedLock = new StripedLock(localStripes);
+        lockMetrics = new LockMetrics(meterRegistry == null ? new SimpleMeterRegistry() : meterRegistry);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 获取锁对象，锁对象不保存持有状态，可以每次获取
+     *
+     * @param name 锁的名称，如 order:{userId}
+     * @return
+     */
+    public ILock getLock(String name) {
+        return lockMetrics.instrument(name, new RedisReentrantLock(name, this));
+    }
+
+    /**
+     * 获取两级锁对象：本节点同一个name的竞争者先在本地分段锁排队，只有一个线程去竞争分布式锁
+     *
+     * @param name 锁的名称，如 order:{userId}
+     * @return
+     */
+    public ILock getStripedLock(String name) {
+        return lockMetrics.instrument(name, new StripedRedisLock(name, stripedLock, new RedisReentrantLock(name, this)));
+    }
+
+    public LockMetrics getLockMetrics() {
+        return lockMetrics;
+    }
+
+    StringRedisTemplate redisTemplate() {
+        return stringRedisTemplate;
+    }
+
+    long watchdogLeaseMillis() {
+        return watchdogLeaseMillis;
+    }
+
+    /**
+     * 当前线程作为锁持有者的标识
+     */
+    String currentOwner() {
+        return nodeId + ":" + Thread.currentThread().getId();
+    }
+
+    /**
+     * 开始等待某个锁的解锁通知，需与 {@link #unsubscribe} 成对调用。
+     * 第一个等待的线程订阅该锁的频道，最后一个等待的线程退出时取消订阅
+     */
+    Semaphore subscribe(String channel) {
+        return waiters.compute(channel, (k, v) -> {
+            Waiters w = v;
+            if (w == null) {
+                w = new Waiters(channel);
+                redisMessageListenerContainer.addMessageListener(this, w.topic);
+            }
+            w.count.incrementAndGet();
+            return w;
+        }).semaphore;
+    }
+
+    void unsubscribe(String channel) {
+        waiters.computeIfPresent(channel, (k, v) -> {
+            if (v.count.decrementAndGet() > 0) {
+                return v;
+            }
+            redisMessageListenerContainer.removeMessageListener(this, v.topic);
+            return null;
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Waiters w = waiters.get(new String(message.getChannel(), StandardCharsets.UTF_8));
+        if (w != null) {
+            //唤醒一个等待的线程，由它去竞争锁，没抢到会继续等待
+            w.semaphore.release();
+        }
+    }
+
+    /**
+     * 加锁成功后开始续期，同一持有者重入时只有一个续期任务
+     */
+    void startRenewal(String key, String owner) {
+        long period = Math.max(watchdogLeaseMillis / 3, 1);
+        renewals.computeIfAbsent(key + ":" + owner, k -> watchdog.scheduleAtFixedRate(
+                () -> renew(key, owner), period, period, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 完全释放锁后停止续期
+     */
+    void stopRenewal(String key, String owner) {
+        ScheduledFuture<?> future = renewals.remove(key + ":" + owner);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void renew(String key, String owner) {
+        try {
+            Long renewed = stringRedisTemplate.execute(RedisReentrantLock.RENEW_SCRIPT,
+                    Collections.singletonList(key), owner, String.valueOf(watchdogLeaseMillis));
+            if (renewed == null || renewed == 0) {
+                //锁已过期或被删除，不再续期
+                log.warn("锁已不由当前线程持有，停止续期：{} {}", key, owner);
+                stopRenewal(key, owner);
+            }
+        } catch (Exception e) {
+            log.error("锁续期失败：{}", key, e);
+        }
+    }
+
+    private static final class Waiters {
+        private final AtomicInteger count = new AtomicInteger();
+        private final Semaphore semaphore = new Semaphore(0);
+        private final ChannelTopic topic;
+
+        private Waiters(String channel) {
+            this.topic = new ChannelTopic(channel);
+        }
+    }
+}
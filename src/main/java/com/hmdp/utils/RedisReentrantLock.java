@@ -0,0 +1,122 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis hash的可重入分布式锁，field为持有者（节点+线程），value为重入次数
+ * 不指定过期时间时由看门狗续期；等待锁时订阅解锁通知，而不是轮询
+ * 通过 {@link RedisLocks#getLock} 获取
+ */
+@Slf4j
+public class RedisReentrantLock implements ILock {
+
+    static final DefaultRedisScript<Long> LOCK_SCRIPT = RedisScripts.load("reentrant_lock.lua", Long.class);
+    static final DefaultRedisScript<Long> UNLOCK_SCRIPT = RedisScripts.load("reentrant_unlock.lua", Long.class);
+    static final DefaultRedisScript<Long> RENEW_SCRIPT = RedisScripts.load("reentrant_renew.lua", Long.class);
+
+    private final String name;
+    private final String key;
+    private final String channel;
+    private final RedisLocks locks;
+
+    RedisReentrantLock(String name, RedisLocks locks) {
+        this.name = name;
+        this.key = RedisLocks.KEY_PREFIX + name;
+        this.channel = RedisLocks.CHANNEL_PREFIX + name;
+        this.locks = locks;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 尝试获取锁，不等待，不续期
+     *
+     * @param timeoutSec 锁持有的超时时间，过期后自动释放
+     * @return
+     */
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        return acquire(locks.currentOwner(), TimeUnit.SECONDS.toMillis(timeoutSec)) == null;
+    }
+
+    @Override
+    public boolean tryLock() {
+        String owner = locks.currentOwner();
+        if (acquire(owner, locks.watchdogLeaseMillis()) == null) {
+            locks.startRenewal(key, owner);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        String owner = locks.currentOwner();
+        long lease = locks.watchdogLeaseMillis();
+        long deadline = System.currentTimeMillis() + unit.toMillis(waitTime);
+        Long ttl = acquire(owner, lease);
+        if (ttl == null) {
+            locks.startRenewal(key, owner);
+            return true;
+        }
+        //先订阅再重试，避免错过两次尝试之间的解锁通知
+        Semaphore semaphore = locks.subscribe(channel);
+        try {
+            while (true) {
+                ttl = acquire(owner, lease);
+                if (ttl == null) {
+                    locks.startRenewal(key, owner);
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                //最多等到锁过期（持有者宕机时不会有解锁通知）
+                semaphore.tryAcquire(ttl > 0 ? Math.min(ttl, remaining) : remaining, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            locks.unsubscribe(channel);
+        }
+    }
+
+    @Override
+    public boolean unlock() {
+        String owner = locks.currentOwner();
+        Long result = null;
+        boolean stillHeld = false;
+        try {
+            result = locks.redisTemplate().execute(UNLOCK_SCRIPT, Arrays.asList(key, channel),
+                    owner, String.valueOf(locks.watchdogLeaseMillis()));
+            //重入的锁只减少了计数，仍需续期
+            stillHeld = result != null && result == 0;
+        } finally {
+            //完全释放、不再持有或解锁异常时都停止续期，避免看门狗一直续期一把不会再被释放的锁
+            if (!stillHeld) {
+                locks.stopRenewal(key, owner);
+            }
+        }
+        if (result == null) {
+            //锁已过期，或不由当前线程持有
+            log.warn("解锁失败，锁不由当前线程持有：{}", key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return null 加锁成功；否则为锁剩余的过期时间（毫秒）
+     */
+    private Long acquire(String owner, long leaseMillis) {
+        return locks.redisTemplate().execute(LOCK_SCRIPT, Collections.singletonList(key),
+                owner, String.valueOf(leaseMillis));
+    }
+}
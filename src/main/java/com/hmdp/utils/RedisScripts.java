@@ -0,0 +1,40 @@
+package com.hmdp.utils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * lua脚本的加载
+ * 启动时读取一次脚本内容，SHA1只计算一次；执行时先 EVALSHA，redis中没有该脚本时才 EVAL 发送全文
+ * （直接使用 setLocation 时，每次执行都会检查classpath资源是否被修改）
+ */
+public final class RedisScripts {
+
+    private RedisScripts() {
+    }
+
+    /**
+     * 从classpath读取脚本
+     *
+     * @param path       脚本路径，如 seckill.lua
+     * @param resultType 返回值类型
+     * @param <T>
+     * @return
+     */
+    public static <T> DefaultRedisScript<T> load(String path, Class<T> resultType) {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            DefaultRedisScript<T> script = new DefaultRedisScript<>(StreamUtils.copyToString(in, StandardCharsets.UTF_8), resultType);
+            //提前计算SHA1
+            script.getSha1();
+            return script;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取lua脚本失败：" + path, e);
+        }
+    }
+}
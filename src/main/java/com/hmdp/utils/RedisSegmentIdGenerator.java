@@ -0,0 +1,183 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于redis自增的id生成器，序列号按天自增长
+ * 号段模式下每次用INCRBY租用一段序列号在本地分配，减少访问redis的次数
+ */
+@Slf4j
+public class RedisSegmentIdGenerator implements IdGenerator {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 号段模式下每次从redis租用的序列号数量，小于等于0时每生成一个id都访问一次redis
+     */
+    private final int segmentSize;
+
+    public RedisSegmentIdGenerator(StringRedisTemplate stringRedisTemplate, int segmentSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentSize = segmentSize;
+    }
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    /**
+     * 号段剩余不足该比例时，在后台提前租用下一个号段
+     */
+    private static final double PREFETCH_RATIO = 0.2;
+
+    private static final ExecutorService SEGMENT_LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 每种前缀的号段缓冲
+     */
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * 最近一次格式化的日期，同一天内不需要重复格式化
+     */
+    private volatile DayKey dayKey = new DayKey(-1, null);
+
+    @Override
+    public long nextId(String keyPrefix) {
+        //1、生成时间戳
+        long nowSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+        long timestamp = nowSecond - RedisIdWorker.BEGIN_TIMESTAMP;
+        //2、生成序列号，序列号按天自增长
+        long day = Math.floorDiv(nowSecond, SECONDS_PER_DAY);
+        long count = segmentSize > 0
+                ? nextSequence(keyPrefix, day)
+                : increment(keyPrefix, day, 1);
+        //3、拼接并返回
+        return timestamp << RedisIdWorker.COUNT_BITS | count;
+    }
+
+    /**
+     * 从本地号段中取出序列号，号段用完后再从redis租用
+     */
+    private long nextSequence(String keyPrefix, long day) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(keyPrefix, k -> new SegmentBuffer());
+        while (true) {
+            IdSegment segment = buffer.current;
+            if (segment != null && segment.day == day) {
+                long sequence = segment.cursor.incrementAndGet();
+                if (sequence <= segment.max) {
+                    if (sequence == segment.prefetchAt) {
+                        prefetch(buffer, keyPrefix, day);
+                    }
+                    return sequence;
+                }
+            }
+            //号段已用完或已跨天，切换到预取的号段，没有则同步租用
+            synchronized (buffer) {
+                if (buffer.current == segment) {
+                    IdSegment next = buffer.next;
+                    buffer.next = null;
+                    buffer.current = next != null && next.day == day ? next : lease(keyPrefix, day);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在后台租用下一个号段
+     */
+    private void prefetch(SegmentBuffer buffer, String keyPrefix, long day) {
+        if (!buffer.loading.compareAndSet(false, true)) {
+            return;
+        }
+        SEGMENT_LOADER.execute(() -> {
+            try {
+                IdSegment next = lease(keyPrefix, day);
+                synchronized (buffer) {
+                    if (buffer.next == null) {
+                        buffer.next = next;
+                    }
+                }
+            } catch (Exception e) {
+                log.error("预取id号段失败，前缀：{}", keyPrefix, e);
+            } finally {
+                buffer.loading.set(false);
+            }
+        });
+    }
+
+    /**
+     * 使用一次INCRBY从redis租用一个号段
+     */
+    private IdSegment lease(String keyPrefix, long day) {
+        long max = increment(keyPrefix, day, segmentSize);
+        return new IdSegment(day, max - segmentSize + 1, max, max - (long) (segmentSize * PREFETCH_RATIO));
+    }
+
+    private long increment(String keyPrefix, long day, long delta) {
+        //自增长
+        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + formatDate(day), delta);
+        if (count == null) {
+            throw new IllegalStateException("生成序列号失败，前缀：" + keyPrefix);
+        }
+        return count;
+    }
+
+    private String formatDate(long day) {
+        DayKey key = dayKey;
+        if (key.day != day) {
+            key = new DayKey(day, LocalDate.ofEpochDay(day).format(DATE_FORMATTER));
+            dayKey = key;
+        }
+        return key.date;
+    }
+
+    /**
+     * 一段从redis租用的连续序列号 [start, max]，只能在租用的那一天使用
+     */
+    private static final class IdSegment {
+        private final long day;
+        private final AtomicLong cursor;
+        private final long max;
+        private final long prefetchAt;
+
+        private IdSegment(long day, long start, long max, long prefetchAt) {
+            this.day = day;
+            this.cursor = new AtomicLong(start - 1);
+            this.max = max;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+
+    private static final class SegmentBuffer {
+        private volatile IdSegment current;
+        private volatile IdSegment next;
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+    }
+
+    private static final class DayKey {
+        private final long day;
+        private final String date;
+
+        private DayKey(long day, String date) {
+            this.day = day;
+            this.date = date;
+        }
+    }
+}
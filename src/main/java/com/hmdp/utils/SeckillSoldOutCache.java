@@ -0,0 +1,107 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 本地的秒杀券售罄标记
+ * 库存扣减为0时由lua脚本发布到 seckill:sold-out 频道，各节点收到后标记售罄，
+ * 之后该秒杀券的请求直接在本地拒绝，不再访问redis；
+ * 售罄标记在一段时间后过期，补充库存的通知丢失时（如订阅连接断开）也不会一直拒绝请求
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutCache implements MessageListener {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 本地售罄标记的有效期（秒）
+     */
+    @Value("${hmdp.seckill.sold-out-ttl-seconds:60}")
+    private long soldOutTtlSeconds = 60;
+
+    private Cache<Long, Boolean> soldOutVouchers;
+
+    @PostConstruct
+    private void init() {
+        soldOutVouchers = Caffeine.newBuilder()
+                .expireAfterWrite(soldOutTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, Arrays.asList(
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL),
+                new ChannelTopic(SECKILL_RESTOCK_CHANNEL)));
+    }
+
+    /**
+     * 秒杀券是否已售罄
+     * @param voucherId
+     * @return
+     */
+    public boolean isSoldOut(Long voucherId) {
+        return soldOutVouchers.getIfPresent(voucherId) != null;
+    }
+
+    /**
+     * 只在本地标记售罄，用于当前节点发现库存不足、但售罄消息已经由其他节点发布过的情况
+     * @param voucherId
+     */
+    public void markSoldOut(Long voucherId) {
+        soldOutVouchers.put(voucherId, Boolean.TRUE);
+    }
+
+    /**
+     * 标记售罄并通知其他节点
+     * @param voucherId
+     */
+    public void publishSoldOut(Long voucherId) {
+        soldOutVouchers.put(voucherId, Boolean.TRUE);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 秒杀券重新补充了库存，清除所有节点的售罄标记
+     * @param voucherId
+     */
+    public void publishRestock(Long voucherId) {
+        soldOutVouchers.invalidate(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        Long voucherId;
+        try {
+            voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的售罄消息：{}", message);
+            return;
+        }
+        if (SECKILL_SOLD_OUT_CHANNEL.equals(channel)) {
+            soldOutVouchers.put(voucherId, Boolean.TRUE);
+        } else {
+            soldOutVouchers.invalidate(voucherId);
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.lang.UUID;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 简单的不可重入锁，不会自动续期
+ * @deprecated 使用 {@link RedisLocks#getLock} 获取可重入、自动续期的锁
+ */
+@Deprecated
 public class SimpleRedisLock implements ILock {
 
     /**
@@ -23,13 +27,11 @@ public class SimpleRedisLock implements ILock {
 
     private static final String KEY_PREFIX = "lock:";
     private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
-    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = RedisScripts.load("unlock.lua", Long.class);
 
-    static {
-        UNLOCK_SCRIPT = new DefaultRedisScript<>();
-        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
-        UNLOCK_SCRIPT.setResultType(Long.class);
-    }
+    //不续期，使用固定的过期时间；等待时轮询的间隔
+    private static final long DEFAULT_TIMEOUT_SEC = 30;
+    private static final long RETRY_INTERVAL_MILLIS = 50;
 
     /**
      * 获取线程的标识，然后缓存该线程的标识，作为锁
@@ -45,6 +47,23 @@ public class SimpleRedisLock implements ILock {
         return Boolean.TRUE.equals(success);
     }
 
+    @Override
+    public boolean tryLock() {
+        return tryLock(DEFAULT_TIMEOUT_SEC);
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(waitTime);
+        while (!tryLock(DEFAULT_TIMEOUT_SEC)) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(RETRY_INTERVAL_MILLIS);
+        }
+        return true;
+    }
+
     /**
      * 非分布式锁的解锁：针对单机
      * 获取锁的标识，与当前操作线程标识进行比较，当一致时解锁
@@ -68,12 +87,13 @@ public class SimpleRedisLock implements ILock {
      * 保证原子性
      */
     @Override
-    public void unlock() {
+    public boolean unlock() {
 //        stringRedisTemplate.delete(KEY_PREFIX + name);
         // 调用lua脚本
-        stringRedisTemplate.execute(
+        Long result = stringRedisTemplate.execute(
                 UNLOCK_SCRIPT,
                 Collections.singletonList(KEY_PREFIX + name),ID_PREFIX + Thread.currentThread().getId()
         );
+        return result != null && result == 1;
     }
 }
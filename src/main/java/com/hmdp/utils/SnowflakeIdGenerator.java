@@ -0,0 +1,81 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法的本地id生成器，生成id不需要访问redis
+ * id结构：31位秒级时间戳 | 10位机器id | 22位序列号，低32位与 {@link RedisSegmentIdGenerator} 的序列号位数相同
+ * 机器id从1开始，保证低32位不小于 2^22；redis按天自增的序列号每天不超过 2^22 个时，与它不会重叠，超过后可能重复
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    /**
+     * 机器id的位数
+     */
+    public static final int WORKER_ID_BITS = 10;
+
+    /**
+     * 最大的机器id
+     */
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+
+    /**
+     * 每秒内序列号的位数
+     */
+    private static final int SEQUENCE_BITS = RedisIdWorker.COUNT_BITS - WORKER_ID_BITS;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * 允许的最大时钟回拨秒数，回拨以内沿用上一次的时间戳继续生成，超过则拒绝生成
+     */
+    private static final long MAX_BACKWARD_SECONDS = 5;
+
+    private final long workerId;
+
+    /**
+     * 上一次生成id时的状态：时间戳 << SEQUENCE_BITS | 序列号
+     * 序列号用完时加1会自然进位到时间戳，相当于借用下一秒
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdGenerator(long workerId) {
+        if (workerId < 1 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("机器id必须在1到" + MAX_WORKER_ID + "之间：" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    @Override
+    public long nextId(String keyPrefix) {
+        while (true) {
+            long timestamp = currentTimestamp();
+            long last = state.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long next;
+            if (timestamp > lastTimestamp) {
+                //进入新的一秒，序列号从0开始
+                next = timestamp << SEQUENCE_BITS;
+            } else if (lastTimestamp - timestamp <= MAX_BACKWARD_SECONDS) {
+                //同一秒内，或时钟小幅回拨：沿用上一次的时间戳，序列号加1
+                next = last + 1;
+            } else {
+                throw new IllegalStateException("时钟回拨了" + (lastTimestamp - timestamp) + "秒，拒绝生成id");
+            }
+            if (state.compareAndSet(last, next)) {
+                long sequence = next & SEQUENCE_MASK;
+                return (next >>> SEQUENCE_BITS) << RedisIdWorker.COUNT_BITS | workerId << SEQUENCE_BITS | sequence;
+            }
+        }
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    protected long currentTimestamp() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - RedisIdWorker.BEGIN_TIMESTAMP;
+    }
+}
@@ -0,0 +1,118 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地分段锁：固定数量的ReentrantLock，按key的hash取其中一段
+ * 同一个key在本节点的竞争者先在这里排队，只有拿到本地锁的线程才去竞争分布式锁；
+ * 每段记录当前持有的key，不同key落在同一段时返回 {@link State#COLLISION}，由调用方直接竞争分布式锁，不互相阻塞
+ */
+public class StripedLock {
+
+    public enum State {
+        /**
+         * 获取到本地锁
+         */
+        ACQUIRED,
+        /**
+         * 本节点其他线程正持有同一个key
+         */
+        CONTENDED,
+        /**
+         * 该段被其他key占用，未获取本地锁
+         */
+        COLLISION
+    }
+
+    private final ReentrantLock[] locks;
+
+    //每段当前持有的key
+    private final AtomicReferenceArray<String> holders;
+
+    private final int mask;
+
+    /**
+     * @param stripes 段数，向上取整为2的幂
+     */
+    public StripedLock(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.holders = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 尝试获取key所在段的锁，不等待
+     */
+    public State tryLock(String key) {
+        int index = indexOf(key);
+        if (locks[index].tryLock()) {
+            acquired(index, key);
+            return State.ACQUIRED;
+        }
+        return key.equals(holders.get(index)) ? State.CONTENDED : State.COLLISION;
+    }
+
+    /**
+     * 在等待时间内获取key所在段的锁；该段被其他key占用时不等待
+     */
+    public State tryLock(String key, long timeout, TimeUnit unit) throws InterruptedException {
+        int index = indexOf(key);
+        ReentrantLock lock = locks[index];
+        if (lock.tryLock()) {
+            acquired(index, key);
+            return State.ACQUIRED;
+        }
+        String holder = holders.get(index);
+        if (holder != null && !holder.equals(key)) {
+            return State.COLLISION;
+        }
+        if (lock.tryLock(timeout, unit)) {
+            acquired(index, key);
+            return State.ACQUIRED;
+        }
+        return State.CONTENDED;
+    }
+
+    /**
+     * 释放key所在段的锁，当前线程未持有时（如获取时发生了COLLISION）什么也不做
+     */
+    public void unlock(String key) {
+        int index = indexOf(key);
+        ReentrantLock lock = locks[index];
+        if (!lock.isHeldByCurrentThread()) {
+            return;
+        }
+        if (lock.getHoldCount() == 1) {
+            holders.set(index, null);
+        }
+        lock.unlock();
+    }
+
+    /**
+     * 段数
+     */
+    public int size() {
+        return locks.length;
+    }
+
+    private void acquired(int index, String key) {
+        //重入时保留最外层的key
+        if (locks[index].getHoldCount() == 1) {
+            holders.set(index, key);
+        }
+    }
+
+    private int indexOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,71 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两级锁：先获取本节点的分段锁，再获取分布式锁
+ * 同一个key在本节点同一时间只有一个线程访问redis，其他线程在本地失败或排队，重试风暴时大幅减少redis的加锁请求
+ * 通过 {@link RedisLocks#getStripedLock} 获取
+ */
+public class StripedRedisLock implements ILock {
+
+    private final String name;
+    private final StripedLock local;
+    private final ILock distributed;
+
+    StripedRedisLock(String name, StripedLock local, ILock distributed) {
+        this.name = name;
+        this.local = local;
+        this.distributed = distributed;
+    }
+
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        if (local.tryLock(name) == StripedLock.State.CONTENDED) {
+            return false;
+        }
+        return acquired(distributed.tryLock(timeoutSec));
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (local.tryLock(name) == StripedLock.State.CONTENDED) {
+            return false;
+        }
+        return acquired(distributed.tryLock());
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        if (local.tryLock(name, waitTime, unit) == StripedLock.State.CONTENDED) {
+            return false;
+        }
+        boolean success = false;
+        try {
+            success = distributed.tryLock(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } finally {
+            acquired(success);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean unlock() {
+        try {
+            return distributed.unlock();
+        } finally {
+            local.unlock(name);
+        }
+    }
+
+    /**
+     * 分布式锁获取失败时释放本地锁
+     */
+    private boolean acquired(boolean success) {
+        if (!success) {
+            local.unlock(name);
+        }
+        return success;
+    }
+}
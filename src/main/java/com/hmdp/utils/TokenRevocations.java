@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+
+/**
+ * 已退出登录、但尚未过期的签名token
+ * redis中用zset保存，member为token id，score为token的过期时间，过期后定时删除，因此只保存仍然有效的token；
+ * 各节点在本地保存一份，启动时全量加载，之后通过 {@link CacheInvalidationBus} 增量同步，验证token时不访问redis
+ */
+@Slf4j
+@Component
+public class TokenRevocations {
+
+    /**
+     * 吊销通知的key前缀，后面跟token id
+     */
+    private static final String NOTIFY_PREFIX = LOGIN_REVOKED_KEY + ":";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    //token id -> 过期时间
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        cacheInvalidationBus.subscribe(NOTIFY_PREFIX, new CacheInvalidationListener() {
+            @Override
+            public void invalidate(String key) {
+                String tokenId = key.substring(NOTIFY_PREFIX.length());
+                Double expireAt = stringRedisTemplate.opsForZSet().score(LOGIN_REVOKED_KEY, tokenId);
+                if (expireAt != null) {
+                    revoked.put(tokenId, expireAt.longValue());
+                }
+            }
+
+            @Override
+            public void invalidatePrefix(String prefix) {
+                reload();
+            }
+
+            @Override
+            public void invalidateAll() {
+                //可能漏掉了通知，重新全量加载
+                reload();
+            }
+        });
+        reload();
+    }
+
+    /**
+     * 吊销一个token，各节点随后拒绝该token
+     *
+     * @param tokenId
+     * @param expireAt token的过期时间（毫秒时间戳），之后不再需要记录
+     */
+    public void revoke(String tokenId, long expireAt) {
+        stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, tokenId, expireAt);
+        revoked.put(tokenId, expireAt);
+        cacheInvalidationBus.publish(NOTIFY_PREFIX + tokenId);
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return revoked.containsKey(tokenId);
+    }
+
+    /**
+     * 从redis全量加载仍未过期的吊销记录
+     */
+    private void reload() {
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(LOGIN_REVOKED_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        if (tuples == null) {
+            return;
+        }
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (tuple.getValue() != null && tuple.getScore() != null) {
+                revoked.put(tuple.getValue(), tuple.getScore().longValue());
+            }
+        }
+    }
+
+    /**
+     * 定时删除已过期的吊销记录，过期的token本身就会验证失败
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void prune() {
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expireAt -> expireAt <= now);
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, Double.NEGATIVE_INFINITY, now);
+        } catch (Exception e) {
+            log.error("删除过期的token吊销记录失败", e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * 自包含的登录token：base64url(用户信息+token id+过期时间) . base64url(HMAC-SHA256签名)
+ * 各节点用相同的密钥在本地验证签名，不需要访问redis；退出登录的token由 {@link TokenRevocations} 记录
+ */
+public class TokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * 密钥至少32字节，与签名长度相同
+     */
+    private static final int MIN_SECRET_BYTES = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+
+    //Mac不是线程安全的，每个线程一个
+    private final ThreadLocal<Mac> macs;
+
+    public TokenSigner(String secret) {
+        byte[] bytes = secret == null ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("token签名密钥至少需要" + MIN_SECRET_BYTES + "字节");
+        }
+        this.key = new SecretKeySpec(bytes, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * 是否为签名token（redis中保存的token为UUID，不含'.'）
+     */
+    public static boolean isSignedToken(String token) {
+        return token.indexOf('.') > 0;
+    }
+
+    /**
+     * 生成签名token
+     *
+     * @param user
+     * @param tokenId  token的唯一标识，退出登录时按它吊销
+     * @param expireAt 过期时间（毫秒时间戳）
+     * @return
+     */
+    public String sign(UserDTO user, String tokenId, long expireAt) {
+        JSONObject claims = new JSONObject();
+        claims.set("id", user.getId());
+        claims.set("nickName", user.getNickName());
+        claims.set("icon", user.getIcon());
+        claims.set("jti", tokenId);
+        claims.set("exp", expireAt);
+        String payload = ENCODER.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
+        return payload + "." + ENCODER.encodeToString(mac(payload));
+    }
+
+    /**
+     * 验证签名和过期时间
+     *
+     * @param token
+     * @param now   当前时间（毫秒时间戳）
+     * @return 签名无效、格式错误或已过期时返回null
+     */
+    public Claims verify(String token, long now) {
+        int index = token.lastIndexOf('.');
+        if (index <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, index);
+        try {
+            byte[] signature = DECODER.decode(token.substring(index + 1));
+            if (!MessageDigest.isEqual(signature, mac(payload))) {
+                return null;
+            }
+            JSONObject claims = JSONUtil.parseObj(new String(DECODER.decode(payload), StandardCharsets.UTF_8));
+            long expireAt = claims.getLong("exp");
+            if (expireAt <= now) {
+                return null;
+            }
+            UserDTO user = new UserDTO();
+            user.setId(claims.getLong("id"));
+            user.setNickName(claims.getStr("nickName"));
+            user.setIcon(claims.getStr("icon"));
+            return new Claims(user, claims.getStr("jti"), expireAt);
+        } catch (RuntimeException e) {
+            //base64或json格式错误
+            return null;
+        }
+    }
+
+    private byte[] mac(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 验证通过的token中的信息
+     */
+    public static final class Claims {
+        private final UserDTO user;
+        private final String tokenId;
+        private final long expireAt;
+
+        private Claims(UserDTO user, String tokenId, long expireAt) {
+            this.user = user;
+            this.tokenId = tokenId;
+            this.expireAt = expireAt;
+        }
+
+        public UserDTO getUser() {
+            return user;
+        }
+
+        public String getTokenId() {
+            return tokenId;
+        }
+
+        public long getExpireAt() {
+            return expireAt;
+        }
+    }
+}
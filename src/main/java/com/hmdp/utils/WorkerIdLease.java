@@ -0,0 +1,135 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从redis租用雪花算法的机器id
+ * 启动时用 SET NX 占用一个空闲的机器id，之后定时续期，关闭时释放；
+ * 本地记录租约的有效期，租约失效（续期失败超过有效期，或机器id已被其他节点占用）后不再允许生成id，
+ * 机器id被占用时重新租用一个空闲的机器id
+ */
+@Slf4j
+public class WorkerIdLease {
+
+    private static final String KEY_PREFIX = "id:worker:";
+
+    /**
+     * 租约时长，节点宕机后该时长内机器id不会被其他节点占用
+     */
+    private static final long LEASE_MINUTES = 10;
+
+    /**
+     * 本地认为租约有效的时长比redis中的过期时间短，留出续期耗时和时钟误差的余量
+     */
+    private static final long LEASE_SAFETY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 当前节点的标识，用于续期和释放时确认机器id仍属于自己
+     */
+    private final String owner = UUID.randomUUID().toString(true);
+
+    private volatile long workerId;
+
+    /**
+     * 本地认为租约有效的截止时间（毫秒时间戳）
+     */
+    private volatile long validUntil;
+
+    public WorkerIdLease(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 从随机位置开始依次尝试占用机器id
+     */
+    public void acquire() {
+        long begin = System.currentTimeMillis();
+        long start = ThreadLocalRandom.current().nextLong(SnowflakeIdGenerator.MAX_WORKER_ID);
+        for (long i = 0; i < SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+            long candidate = (start + i) % SnowflakeIdGenerator.MAX_WORKER_ID + 1;
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(KEY_PREFIX + candidate, owner, LEASE_MINUTES, TimeUnit.MINUTES);
+            if (Boolean.TRUE.equals(success)) {
+                workerId = candidate;
+                extend(begin);
+                log.info("租用机器id：{}", workerId);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有空闲的机器id");
+    }
+
+    /**
+     * 续期，租约丢失（如redis长时间不可用）时尝试重新占用同一个机器id；
+     * 已被其他节点占用时立即停止生成id，并重新租用一个空闲的机器id
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void renew() {
+        long begin = System.currentTimeMillis();
+        String key = KEY_PREFIX + workerId;
+        try {
+            String current = stringRedisTemplate.opsForValue().get(key);
+            if (owner.equals(current)) {
+                if (Boolean.TRUE.equals(stringRedisTemplate.expire(key, LEASE_MINUTES, TimeUnit.MINUTES))) {
+                    extend(begin);
+                }
+                return;
+            }
+            Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(key, owner, LEASE_MINUTES, TimeUnit.MINUTES);
+            if (Boolean.TRUE.equals(success)) {
+                extend(begin);
+                return;
+            }
+            validUntil = 0;
+            log.error("机器id {} 已被其他节点占用，暂停生成id并重新租用机器id", workerId);
+            acquire();
+        } catch (Exception e) {
+            //租约到期前仍可继续生成id，到期后暂停
+            log.error("机器id {} 续期失败", workerId, e);
+        }
+    }
+
+    /**
+     * 获取当前租用的机器id
+     *
+     * @return
+     * @throws IllegalStateException 租约已失效，此时不能生成id
+     */
+    public long currentWorkerId() {
+        if (System.currentTimeMillis() >= validUntil) {
+            throw new IllegalStateException("机器id " + workerId + " 的租约已失效，暂停生成id");
+        }
+        return workerId;
+    }
+
+    /**
+     * 释放机器id
+     */
+    public void release() {
+        String key = KEY_PREFIX + workerId;
+        if (owner.equals(stringRedisTemplate.opsForValue().get(key))) {
+            stringRedisTemplate.delete(key);
+        }
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 占用或续期成功后延长本地的有效期
+     *
+     * @param begin 发起请求的时间，redis中的过期时间不早于 begin + 租约时长
+     */
+    private void extend(long begin) {
+        validUntil = begin + TimeUnit.MINUTES.toMillis(LEASE_MINUTES) - LEASE_SAFETY_MILLIS;
+    }
+}
@@ -0,0 +1,11 @@
+-- 可重入锁的加锁：锁不存在或由当前线程持有时，重入次数加一并重置过期时间
+-- KEYS[1]：锁的key  lock:{name}，hash结构，field为线程标识，value为重入次数
+-- ARGV[1]：线程标识
+-- ARGV[2]：锁的过期时间（毫秒）
+-- 返回值：nil 加锁成功；否则为锁剩余的过期时间（毫秒）
+if (redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    redis.call('hincrby', KEYS[1], ARGV[1], 1)
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return nil
+end
+return redis.call('pttl', KEYS[1])
@@ -0,0 +1,10 @@
+-- 看门狗续期：锁仍由该线程持有时重置过期时间
+-- KEYS[1]：锁的key  lock:{name}
+-- ARGV[1]：线程标识
+-- ARGV[2]：锁的过期时间（毫秒）
+-- 返回值：1 续期成功；0 锁已不由该线程持有
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 1
+end
+return 0
@@ -0,0 +1,17 @@
+-- 可重入锁的解锁：重入次数减一，减到0时删除锁并通知等待的线程
+-- KEYS[1]：锁的key  lock:{name}
+-- KEYS[2]：解锁通知频道  lock:channel:{name}
+-- ARGV[1]：线程标识
+-- ARGV[2]：锁的过期时间（毫秒）
+-- 返回值：nil 锁不由当前线程持有；0 仍持有（重入）；1 已释放
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then
+    return nil
+end
+local count = redis.call('hincrby', KEYS[1], ARGV[1], -1)
+if (count > 0) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return 0
+end
+redis.call('del', KEYS[1])
+redis.call('publish', KEYS[2], ARGV[1])
+return 1
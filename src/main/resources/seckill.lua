@@ -0,0 +1,49 @@
+-- 秒杀资格判断：秒杀时间、库存是否充足、用户是否已下单，判断通过则扣减库存、记录下单用户，并把订单发送到消息队列
+-- KEYS[1]：库存key   seckill:stock:{voucherId}
+-- KEYS[2]：订单key   seckill:order:{voucherId}
+-- KEYS[3]：订单消息队列 stream.orders
+-- KEYS[4]：秒杀券信息key seckill:voucher:{voucherId}
+-- ARGV[1]：用户id
+-- ARGV[2]：优惠券id
+-- ARGV[3]：订单id
+-- ARGV[4]：当前时间戳（毫秒）
+-- ARGV[5]：售罄通知频道 seckill:sold-out
+-- 返回值：0 下单成功；1 库存不足；2 用户已下单；3 秒杀尚未开始；4 秒杀已经结束；5 秒杀券未预热
+
+-- 1.判断秒杀时间 hmget voucherKey beginTime endTime
+local time = redis.call('hmget', KEYS[4], 'beginTime', 'endTime')
+if (not time[1] or not time[2]) then
+    -- 秒杀券信息不在redis中
+    return 5
+end
+local now = tonumber(ARGV[4])
+if (tonumber(time[1]) > now) then
+    return 3
+end
+if (tonumber(time[2]) < now) then
+    return 4
+end
+-- 2.判断库存是否充足 get stockKey
+local stock = tonumber(redis.call('get', KEYS[1]))
+if (stock == nil) then
+    -- 库存不在redis中（如redis数据丢失），与秒杀券信息缺失一样重新预热
+    return 5
+end
+if (stock <= 0) then
+    -- 库存不足
+    return 1
+end
+-- 3.判断用户是否下单 sismember orderKey userId
+if (redis.call('sismember', KEYS[2], ARGV[1]) == 1) then
+    -- 重复下单
+    return 2
+end
+-- 4.扣库存 incrby stockKey -1，扣减到0时通知各节点已售罄
+if (redis.call('incrby', KEYS[1], -1) == 0) then
+    redis.call('publish', ARGV[5], ARGV[2])
+end
+-- 5.记录下单用户 sadd orderKey userId
+redis.call('sadd', KEYS[2], ARGV[1])
+-- 6.发送订单到消息队列 xadd stream.orders * userId voucherId id
+redis.call('xadd', KEYS[3], '*', 'userId', ARGV[1], 'voucherId', ARGV[2], 'id', ARGV[3])
+return 0
@@ -0,0 +1,12 @@
+-- 从库存分段中扣减库存，库存不足时不扣减
+-- KEYS[1]：分段库存key seckill:stock:{voucherId}:{bucket}
+-- ARGV[1]：扣减数量
+-- 返回值：1 扣减成功；0 库存不足
+
+local stock = tonumber(redis.call('get', KEYS[1]))
+local count = tonumber(ARGV[1])
+if (stock == nil or stock < count) then
+    return 0
+end
+redis.call('incrby', KEYS[1], -count)
+return 1
@@ -0,0 +1,14 @@
+-- 在两个库存分段之间移动库存，源分段库存不足时不移动
+-- KEYS[1]：源分段库存key seckill:stock:{voucherId}:{from}
+-- KEYS[2]：目标分段库存key seckill:stock:{voucherId}:{to}
+-- ARGV[1]：移动数量
+-- 返回值：1 移动成功；0 源分段库存不足
+
+local stock = tonumber(redis.call('get', KEYS[1]))
+local count = tonumber(ARGV[1])
+if (stock == nil or stock < count) then
+    return 0
+end
+redis.call('incrby', KEYS[1], -count)
+redis.call('incrby', KEYS[2], count)
+return 1
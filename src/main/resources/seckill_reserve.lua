@@ -0,0 +1,24 @@
+-- 分段库存的秒杀：判断秒杀时间和一人一单，判断通过则预占下单资格，库存在各分段中单独扣减
+-- KEYS[1]：订单key   seckill:order:{voucherId}
+-- KEYS[2]：秒杀券信息key seckill:voucher:{voucherId}
+-- ARGV[1]：用户id
+-- ARGV[2]：当前时间戳（毫秒）
+-- 返回值：0 预占成功；2 用户已下单；3 秒杀尚未开始；4 秒杀已经结束；5 秒杀券未预热
+
+-- 1.判断秒杀时间 hmget voucherKey beginTime endTime
+local time = redis.call('hmget', KEYS[2], 'beginTime', 'endTime')
+if (not time[1] or not time[2]) then
+    return 5
+end
+local now = tonumber(ARGV[2])
+if (tonumber(time[1]) > now) then
+    return 3
+end
+if (tonumber(time[2]) < now) then
+    return 4
+end
+-- 2.记录下单用户 sadd orderKey userId，已存在说明重复下单
+if (redis.call('sadd', KEYS[1], ARGV[1]) == 0) then
+    return 2
+end
+return 0
@@ -0,0 +1,119 @@
+package com.hmdp;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheEntry;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheCodecTest {
+
+    private static Shop shop(String images) {
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setImages(images);
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        return shop;
+    }
+
+    private static RedisData redisData(Object data) {
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setDelta(12L);
+        redisData.setExpireTime(LocalDateTime.of(2030, 1, 1, 0, 0, 0));
+        return redisData;
+    }
+
+    private static void assertRoundTrip(CacheCodec codec, Shop shop) {
+        RedisData decoded = codec.decode(codec.encode(redisData(shop)), Shop.class);
+        assertEquals(shop, decoded.getData());
+        assertEquals(12L, decoded.getDelta());
+        assertEquals(LocalDateTime.of(2030, 1, 1, 0, 0, 0), decoded.getExpireTime());
+    }
+
+    @Test
+    void testRoundTrip() {
+        Shop shop = shop("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg");
+        assertRoundTrip(JsonCacheCodec.INSTANCE, shop);
+        assertRoundTrip(new BinaryCacheCodec(0), shop);
+    }
+
+    @Test
+    void testCompression() {
+        StringBuilder images = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            images.append("https://qcloud.dpfile.com/pc/image").append(i).append(".jpg,");
+        }
+        Shop shop = shop(images.toString());
+        BinaryCacheCodec compressed = new BinaryCacheCodec(128);
+        assertTrue(compressed.encode(redisData(shop)).length < new BinaryCacheCodec(0).encode(redisData(shop)).length);
+        assertRoundTrip(compressed, shop);
+    }
+
+    @Test
+    void testArrayRoundTrip() {
+        ShopType type = new ShopType();
+        type.setId(1L);
+        type.setName("美食");
+        type.setIcon("/types/ms.png");
+        type.setSort(1);
+        ShopType[] types = {type};
+        for (CacheCodec codec : new CacheCodec[]{JsonCacheCodec.INSTANCE, new BinaryCacheCodec(512)}) {
+            ShopType[] decoded = codec.read(codec.encode(redisData(types))).getData(ShopType[].class);
+            assertArrayEquals(types, decoded);
+        }
+    }
+
+    @Test
+    void testReadHeaderOnly() {
+        Shop shop = shop(null);
+        byte[] bytes = new BinaryCacheCodec(512).encode(redisData(shop));
+        long expireAt = LocalDateTime.of(2030, 1, 1, 0, 0, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        //只读取头部即可得到逻辑过期时间
+        byte[] header = Arrays.copyOf(bytes, BinaryCacheCodec.HEADER_LENGTH);
+        assertEquals(expireAt, BinaryCacheCodec.readExpireAt(header));
+        assertNull(BinaryCacheCodec.readExpireAt(JsonCacheCodec.INSTANCE.encode(redisData(shop))));
+        CacheEntry entry = new BinaryCacheCodec(512).read(bytes);
+        assertEquals(expireAt, entry.getExpireAt());
+        assertEquals(12L, entry.getDelta());
+        assertFalse(entry.isExpired(expireAt - 1));
+        assertTrue(entry.isExpired(expireAt));
+        assertEquals(shop, entry.getData(Shop.class));
+    }
+
+    @Test
+    void testReadsOtherFormats() {
+        Shop shop = shop(null);
+        //二进制编码读取JSON写入的值，JSON编码读取二进制写入的值
+        byte[] json = JsonCacheCodec.INSTANCE.encode(redisData(shop));
+        assertEquals(shop, new BinaryCacheCodec(512).decode(json, Shop.class).getData());
+        byte[] binary = new BinaryCacheCodec(512).encode(redisData(shop));
+        assertEquals(shop, JsonCacheCodec.INSTANCE.decode(binary, Shop.class).getData());
+        //直接保存数据、没有逻辑过期时间的旧格式
+        byte[] plain = JSONUtil.toJsonStr(shop).getBytes(StandardCharsets.UTF_8);
+        RedisData decoded = new BinaryCacheCodec(512).decode(plain, Shop.class);
+        assertEquals(shop, decoded.getData());
+        assertNull(decoded.getExpireTime());
+    }
+}
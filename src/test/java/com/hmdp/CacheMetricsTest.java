@@ -0,0 +1,36 @@
+package com.hmdp;
+
+import com.hmdp.utils.CacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheMetricsTest {
+
+    @Test
+    void testSnapshot() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CacheMetrics metrics = new CacheMetrics("shop", registry);
+        long begin = System.nanoTime();
+        metrics.get(CacheMetrics.Result.LOCAL_HIT, begin);
+        metrics.get(CacheMetrics.Result.HIT, begin);
+        metrics.get(CacheMetrics.Result.NULL_HIT, begin);
+        metrics.get(CacheMetrics.Result.MISS, begin);
+        metrics.mutexContended();
+        metrics.payload(100);
+        metrics.payload(300);
+
+        Map<String, Object> snapshot = metrics.snapshot();
+        assertEquals(0.5, (double) snapshot.get("hitRatio"), 1e-9);
+        assertEquals(0.25, (double) snapshot.get("nullHitRatio"), 1e-9);
+        assertEquals(0.25, (double) snapshot.get("missRatio"), 1e-9);
+        assertEquals(1L, snapshot.get("mutexContention"));
+        assertEquals(200.0, (double) snapshot.get("payloadMeanBytes"), 1e-9);
+        //指标带有区域和结果标签
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "shop").tag("result", "miss").counter().count(), 1e-9);
+        assertEquals(4, registry.get("cache.latency").tag("op", "get").timer().count());
+    }
+}
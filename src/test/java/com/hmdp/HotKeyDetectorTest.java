@@ -0,0 +1,69 @@
+package com.hmdp;
+
+import com.hmdp.utils.HotKeyDetector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotKeyDetectorTest {
+
+    private static class TestDetector extends HotKeyDetector {
+        private final AtomicLong now = new AtomicLong(1_000_000);
+
+        TestDetector(long threshold, int topK) {
+            super("test", 10_000, 5, threshold, topK, 1.0);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now.get();
+        }
+    }
+
+    @Test
+    void testDetectHotKey() {
+        TestDetector detector = new TestDetector(100, 10);
+        for (int i = 0; i < 99; i++) {
+            assertFalse(detector.record("cache:shop:1"));
+        }
+        assertTrue(detector.record("cache:shop:1"));
+        assertTrue(detector.isHot("cache:shop:1"));
+        assertFalse(detector.record("cache:shop:2"));
+        assertEquals(100, detector.estimate("cache:shop:1"));
+    }
+
+    @Test
+    void testWindowSlides() {
+        TestDetector detector = new TestDetector(100, 10);
+        for (int i = 0; i < 100; i++) {
+            detector.record("cache:shop:1");
+        }
+        assertTrue(detector.isHot("cache:shop:1"));
+        //窗口内的访问仍然计入
+        detector.now.addAndGet(8_000);
+        detector.record("cache:shop:2");
+        assertTrue(detector.isHot("cache:shop:1"));
+        //滑出窗口后不再是热点
+        detector.now.addAndGet(4_000);
+        detector.record("cache:shop:2");
+        assertFalse(detector.isHot("cache:shop:1"));
+        assertEquals(0, detector.estimate("cache:shop:1"));
+    }
+
+    @Test
+    void testTopK() {
+        TestDetector detector = new TestDetector(10, 2);
+        for (int key = 1; key <= 3; key++) {
+            for (int i = 0; i < 10 * key; i++) {
+                detector.record("cache:shop:" + key);
+            }
+        }
+        Map<String, Long> hotKeys = detector.hotKeys();
+        assertEquals(2, hotKeys.size());
+        assertEquals("cache:shop:3", hotKeys.keySet().iterator().next());
+        assertFalse(hotKeys.containsKey("cache:shop:1"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.hmdp;
+
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.LockMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockMetricsTest {
+
+    /**
+     * 只在内存中计数的锁，owned=false 模拟解锁前锁已过期
+     */
+    private static class FakeLock implements ILock {
+        private int count;
+        private boolean owned = true;
+
+        @Override
+        public boolean tryLock(long timeoutSec) {
+            return tryLock();
+        }
+
+        @Override
+        public boolean tryLock() {
+            count++;
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(long waitTime, TimeUnit unit) {
+            return false;
+        }
+
+        @Override
+        public boolean unlock() {
+            count--;
+            return owned;
+        }
+    }
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final LockMetrics metrics = new LockMetrics(registry);
+
+    @Test
+    void testReentrantHold() {
+        ILock lock = metrics.instrument("order:1", new FakeLock());
+        assertTrue(lock.tryLock());
+        assertTrue(lock.tryLock());
+        assertEquals(1, metrics.heldLocks().size());
+        assertEquals(2, metrics.heldLocks().get(0).get("holdCount"));
+        assertTrue(lock.unlock());
+        assertEquals(1, metrics.heldLocks().size());
+        assertTrue(lock.unlock());
+        assertTrue(metrics.heldLocks().isEmpty());
+        assertEquals(2, registry.get("lock.acquire").tag("lock", "order").tag("result", "success").timer().count());
+        assertEquals(1, registry.get("lock.hold").tag("lock", "order").timer().count());
+    }
+
+    @Test
+    void testFailureAndLeaseLost() throws InterruptedException {
+        FakeLock fake = new FakeLock();
+        ILock lock = metrics.instrument("order:2", fake);
+        assertFalse(lock.tryLock(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, registry.get("lock.acquire").tag("result", "failure").timer().count());
+        assertTrue(lock.tryLock());
+        assertTrue(lock.tryLock());
+        //锁已过期时，即使还有重入次数也不再视为持有
+        fake.owned = false;
+        assertFalse(lock.unlock());
+        assertTrue(metrics.heldLocks().isEmpty());
+        assertEquals(1, registry.get("lock.lease.lost").tag("lock", "order").counter().count());
+    }
+}
@@ -0,0 +1,53 @@
+package com.hmdp;
+
+import com.hmdp.utils.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService es = Executors.newFixedThreadPool(16);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(es.submit(() -> singleFlight.execute("cache:shop:1", () -> {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 42;
+            })));
+        }
+        //等待所有调用者进入
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<Integer> result : results) {
+            assertEquals(42, result.get(5, TimeUnit.SECONDS));
+        }
+        es.shutdown();
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testFailureIsSharedAndNotCached() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("k", () -> {
+            throw new IllegalStateException("db down");
+        }));
+        //失败后不保留结果，下一次调用重新加载
+        assertEquals(1, singleFlight.execute("k", () -> 1));
+    }
+}
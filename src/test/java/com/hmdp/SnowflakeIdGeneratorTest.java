@@ -0,0 +1,103 @@
+package com.hmdp;
+
+import com.hmdp.utils.LeasedSnowflakeIdGenerator;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import com.hmdp.utils.WorkerIdLease;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnowflakeIdGeneratorTest {
+
+    @Test
+    void testLayout() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(5);
+        long id = generator.nextId("order");
+        assertEquals(5, (id >>> 22) & SnowflakeIdGenerator.MAX_WORKER_ID);
+        assertTrue((id & 0xFFFFFFFFL) >= 1L << 22);
+    }
+
+    @Test
+    void testUniqueUnderConcurrency() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService es = Executors.newFixedThreadPool(8);
+        CountDownLatch latch = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            es.submit(() -> {
+                for (int j = 0; j < 50000; j++) {
+                    ids.add(generator.nextId("order"));
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+        es.shutdown();
+        assertEquals(400000, ids.size());
+    }
+
+    @Test
+    void testClockRollback() {
+        long[] now = {1000};
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1) {
+            @Override
+            protected long currentTimestamp() {
+                return now[0];
+            }
+        };
+        long first = generator.nextId("order");
+        //小幅回拨：沿用上一次的时间戳，id仍然递增
+        now[0] = 997;
+        long second = generator.nextId("order");
+        assertTrue(second > first);
+        //大幅回拨：拒绝生成
+        now[0] = 900;
+        assertThrows(IllegalStateException.class, () -> generator.nextId("order"));
+    }
+
+    @Test
+    void testBorrowNextSecond() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1) {
+            @Override
+            protected long currentTimestamp() {
+                return 1000;
+            }
+        };
+        long last = 0;
+        //序列号用完后借用下一秒，id不重复且递增
+        for (int i = 0; i < (1 << 22) + 10; i++) {
+            long id = generator.nextId("order");
+            assertTrue(id > last);
+            last = id;
+        }
+        assertEquals(1001, last >>> 32);
+    }
+
+    @Test
+    void testLeasedGenerator() {
+        long[] workerId = {3};
+        WorkerIdLease lease = new WorkerIdLease(null) {
+            @Override
+            public long currentWorkerId() {
+                if (workerId[0] == 0) {
+                    throw new IllegalStateException("租约已失效");
+                }
+                return workerId[0];
+            }
+        };
+        LeasedSnowflakeIdGenerator generator = new LeasedSnowflakeIdGenerator(lease);
+        assertEquals(3, (generator.nextId("order") >>> 22) & SnowflakeIdGenerator.MAX_WORKER_ID);
+        //租约失效时拒绝生成
+        workerId[0] = 0;
+        assertThrows(IllegalStateException.class, () -> generator.nextId("order"));
+        //重新租用到其他机器id后切换
+        workerId[0] = 7;
+        assertEquals(7, (generator.nextId("order") >>> 22) & SnowflakeIdGenerator.MAX_WORKER_ID);
+    }
+}
@@ -0,0 +1,50 @@
+package com.hmdp;
+
+import com.hmdp.utils.StripedLock;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StripedLockTest {
+
+    private final ExecutorService other = Executors.newSingleThreadExecutor();
+
+    private StripedLock.State tryLockInOtherThread(StripedLock lock, String key) throws Exception {
+        return other.submit(() -> lock.tryLock(key, 10, TimeUnit.MILLISECONDS)).get();
+    }
+
+    @Test
+    void testSameKeyContended() throws Exception {
+        StripedLock lock = new StripedLock(16);
+        assertEquals(StripedLock.State.ACQUIRED, lock.tryLock("order:1"));
+        assertEquals(StripedLock.State.CONTENDED, tryLockInOtherThread(lock, "order:1"));
+        lock.unlock("order:1");
+        assertEquals(StripedLock.State.ACQUIRED, tryLockInOtherThread(lock, "order:1"));
+        other.shutdown();
+    }
+
+    @Test
+    void testCollisionDoesNotBlock() throws Exception {
+        //只有一段，所有key都落在同一段
+        StripedLock lock = new StripedLock(1);
+        assertEquals(StripedLock.State.ACQUIRED, lock.tryLock("order:1"));
+        assertEquals(StripedLock.State.COLLISION, tryLockInOtherThread(lock, "order:2"));
+        //重入时保留最外层的key
+        assertEquals(StripedLock.State.ACQUIRED, lock.tryLock("order:2"));
+        lock.unlock("order:2");
+        assertEquals(StripedLock.State.CONTENDED, tryLockInOtherThread(lock, "order:1"));
+        lock.unlock("order:1");
+        //未持有时释放什么也不做
+        lock.unlock("order:1");
+        other.shutdown();
+    }
+
+    @Test
+    void testStripesRoundedUp() {
+        assertEquals(1024, new StripedLock(1000).size());
+    }
+}
@@ -0,0 +1,62 @@
+package com.hmdp;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.TokenSigner;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenSignerTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private final TokenSigner signer = new TokenSigner(SECRET);
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("可可今天不吃肉");
+        user.setIcon("/imgs/icons/kkjtbcr.jpg");
+        return user;
+    }
+
+    @Test
+    void testSignAndVerify() {
+        String token = signer.sign(user(), "jti-1", 2000);
+        assertTrue(TokenSigner.isSignedToken(token));
+        assertFalse(TokenSigner.isSignedToken("6f1c2b1e-2a3d-4c5e-8f90-123456789abc"));
+        TokenSigner.Claims claims = signer.verify(token, 1000);
+        assertNotNull(claims);
+        assertEquals(user(), claims.getUser());
+        assertEquals("jti-1", claims.getTokenId());
+        assertEquals(2000, claims.getExpireAt());
+    }
+
+    @Test
+    void testRejectExpired() {
+        String token = signer.sign(user(), "jti-1", 2000);
+        assertNull(signer.verify(token, 2000));
+    }
+
+    @Test
+    void testRejectTampered() {
+        String token = signer.sign(user(), "jti-1", 2000);
+        int index = token.indexOf('.');
+        String payload = new String(Base64.getUrlDecoder().decode(token.substring(0, index)), StandardCharsets.UTF_8);
+        String forged = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.replace("1010", "1").getBytes(StandardCharsets.UTF_8));
+        assertNull(signer.verify(forged + token.substring(index), 1000));
+        assertNull(signer.verify(token + "x", 1000));
+        assertNull(signer.verify("not.a-token", 1000));
+        //其他密钥签名的token
+        assertNull(new TokenSigner(SECRET.toUpperCase()).verify(token, 1000));
+    }
+
+    @Test
+    void testShortSecret() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenSigner("secret"));
+    }
+}